@@ -0,0 +1,223 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.HashSet;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClass;
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+
+import obo_tutorial.Extractor;
+import obo_tutorial.LocalityIndex;
+import obo_tutorial.ModuleState;
+import obo_tutorial.TermList;
+
+/**
+ * Check that `extract --incremental` gives the same module
+ * as a full extraction when the term list changes.
+ * For each module type, extract a module from the base term list
+ * with its state saved, change the term list,
+ * update the module incrementally, extract the new term list in full,
+ * and compare the axioms of the two modules.
+ * The changes are: added seeds in the module's signature,
+ * added seeds outside it, removed seeds, and added "remove" lines.
+ * Only the first and last should reuse the saved module (see ModuleState);
+ * the others should fall back to a full extraction.
+ * Exits with status 1 if any module differs
+ * or is reused when it should not be.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class ModuleStateCheck {
+  /**
+   * The IRI of the extracted modules.
+   */
+  private static final String MODULE_IRI = "http://example.com/module.owl";
+
+  /**
+   * The number of seeds or "remove" lines to add in each change.
+   */
+  private static final int CHANGES = 5;
+
+  /**
+   * Run the check.
+   *
+   * @param args Two strings:
+   *   1. the path of the source ontology file
+   *   2. the path of the base term list file
+   */
+  public static void main(String[] args) throws Exception {
+    String sourcePath = args[0];
+    TermList base = TermList.read(new File(args[1]));
+
+    // classes of the source, sorted so that runs are repeatable
+    List<IRI> classes = new ArrayList<IRI>();
+    OWLOntology source = Extractor.loadSource(sourcePath, null, false);
+    for(OWLClass cls: source.getClassesInSignature()) {
+      classes.add(cls.getIRI());
+    }
+    Collections.sort(classes);
+    source.getOWLOntologyManager().removeOntology(source);
+
+    File dir = File.createTempFile("module-state", "");
+    dir.delete();
+    dir.mkdir();
+    int failures = 0;
+    try {
+      for(String name: LocalityIndex.MODULE_TYPES.split(", ")) {
+        ModuleType moduleType = LocalityIndex.getModuleType(name);
+        Set<IRI> signature =
+          extract(sourcePath, base, new File(dir, "base.owl"), moduleType);
+        List<IRI> inside = new ArrayList<IRI>();
+        List<IRI> outside = new ArrayList<IRI>();
+        for(IRI iri: classes) {
+          if(base.getIncluded().contains(iri)) {
+            continue;
+          }
+          if(signature.contains(iri)) {
+            inside.add(iri);
+          } else {
+            outside.add(iri);
+          }
+        }
+
+        TermList added = copy(base);
+        added.getIncluded().addAll(first(inside));
+        failures = failures + check(sourcePath, base, added,
+            "added seeds in signature", true, dir, moduleType);
+
+        // a TOP module can hold every class of the source
+        if(outside.isEmpty()) {
+          System.out.println(String.format("SKIP %-4s %s", moduleType.name(),
+                "added seeds outside signature: no classes outside it"));
+        } else {
+          added = copy(base);
+          added.getIncluded().addAll(first(outside));
+          failures = failures + check(sourcePath, base, added,
+              "added seeds outside signature", false, dir, moduleType);
+        }
+
+        TermList removed = copy(base);
+        removed.getIncluded().remove(
+            Collections.min(base.getIncluded()));
+        failures = failures + check(sourcePath, base, removed,
+            "removed seed", false, dir, moduleType);
+
+        TermList removeLines = copy(base);
+        removeLines.getRemoved().addAll(first(inside));
+        removeLines.getRemoved().add(Collections.max(base.getIncluded()));
+        failures = failures + check(sourcePath, base, removeLines,
+            "added remove lines", true, dir, moduleType);
+      }
+    } finally {
+      for(File file: dir.listFiles()) {
+        file.delete();
+      }
+      dir.delete();
+    }
+
+    if(failures > 0) {
+      System.out.println("ERROR: " + failures + " checks failed");
+      System.exit(1);
+    }
+    System.out.println("All checks passed");
+  }
+
+  /**
+   * Given a base term list and a changed term list,
+   * extract the base module with its state saved,
+   * update it incrementally to the changed list,
+   * extract the changed list in full, and compare the modules.
+   *
+   * @return 1 if the check failed, 0 if it passed
+   */
+  private static int check(String sourcePath, TermList base,
+      TermList changed, String name, boolean expectReuse, File dir,
+      ModuleType moduleType) throws Exception {
+    File incremental = new File(dir, "incremental.owl");
+    File baseTerms = new File(dir, "base.txt");
+    File changedTerms = new File(dir, "changed.txt");
+    File full = new File(dir, "full.owl");
+    base.write(baseTerms);
+    changed.write(changedTerms);
+    for(String suffix: new String[] {"", ModuleState.STATE_SUFFIX,
+        ModuleState.TERMS_SUFFIX, ModuleState.SIGNATURE_SUFFIX}) {
+      new File(incremental.getPath() + suffix).delete();
+    }
+
+    // the first run saves the state, the second may reuse it
+    Extractor.extract(sourcePath, baseTerms.getPath(), incremental.getPath(),
+        MODULE_IRI, null, false, true, moduleType);
+    boolean reused = ModuleState.update(sourcePath, incremental.getPath(),
+        MODULE_IRI, changed, moduleType);
+    if(!reused) {
+      Extractor.extract(sourcePath, changedTerms.getPath(),
+          incremental.getPath(), MODULE_IRI, null, false, true,
+          moduleType);
+    }
+    Extractor.extract(sourcePath, changedTerms.getPath(), full.getPath(),
+        MODULE_IRI, null, false, false, moduleType);
+
+    Set<OWLAxiom> expected = load(full).getAxioms();
+    Set<OWLAxiom> actual = load(incremental).getAxioms();
+    boolean same = expected.equals(actual);
+    String result = String.format("%-4s %-30s reused %-5s %d %d axioms",
+        moduleType.name(), name, reused, actual.size(), expected.size());
+    if(!same || reused != expectReuse) {
+      System.out.println("FAIL " + result);
+      return 1;
+    }
+    System.out.println("PASS " + result);
+    return 0;
+  }
+
+  /**
+   * Extract a module in full and return its saved signature.
+   */
+  private static Set<IRI> extract(String sourcePath, TermList terms,
+      File target, ModuleType moduleType) throws IOException {
+    File termsFile = new File(target.getPath() + ".txt");
+    terms.write(termsFile);
+    Extractor.extract(sourcePath, termsFile.getPath(), target.getPath(),
+        MODULE_IRI, null, false, true, moduleType);
+    return TermList.read(
+        new File(target.getPath() + ModuleState.SIGNATURE_SUFFIX))
+      .getIncluded();
+  }
+
+  /**
+   * Return a copy of the directives of a term list.
+   */
+  private static TermList copy(TermList terms) {
+    TermList list = new TermList();
+    list.getIncluded().addAll(terms.getIncluded());
+    list.getStripped().addAll(terms.getStripped());
+    list.getRemoved().addAll(terms.getRemoved());
+    return list;
+  }
+
+  /**
+   * Return the first CHANGES IRIs of a list.
+   */
+  private static Set<IRI> first(List<IRI> iris) {
+    return new HashSet<IRI>(iris.subList(0, Math.min(CHANGES, iris.size())));
+  }
+
+  /**
+   * Load an ontology file into a new manager.
+   */
+  private static OWLOntology load(File file) throws Exception {
+    return OWLManager.createOWLOntologyManager()
+      .loadOntologyFromOntologyDocument(file);
+  }
+
+}
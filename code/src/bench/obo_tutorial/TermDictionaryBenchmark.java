@@ -0,0 +1,184 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+import obo_tutorial.TermMapper;
+import obo_tutorial.TermMapperBenchmark;
+import obo_tutorial.TripleConverter;
+
+/**
+ * Compare the heap retained by the triples that TripleConverter builds
+ * with a shared TermDictionary against the original conversion,
+ * which created a new Resource for every cell,
+ * and the heap retained by TermMapper results with and without
+ * interned values.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class TermDictionaryBenchmark {
+  /**
+   * Run the benchmark.
+   *
+   * @param args Optional: the number of rows to generate (default 100000)
+   */
+  public static void main(String[] args) throws IOException {
+    int rows = 100000;
+    if(args.length > 0) {
+      rows = Integer.parseInt(args[0]);
+    }
+
+    Map<String,String> termMap = TermMapperBenchmark.generateTermMap(1000);
+    String input = TermMapperBenchmark.generateInput(termMap, rows);
+    Map<String,String> prefixMap = new HashMap<String,String>();
+    prefixMap.put("rdf", "http://www.w3.org/1999/02/22-rdf-syntax-ns#");
+    prefixMap.put("obo", "http://purl.obolibrary.org/obo/");
+    prefixMap.put("tutorial", "http://example.com/tutorial#");
+    File output = File.createTempFile("obo-tutorial-benchmark", ".ttl");
+    output.deleteOnExit();
+    System.out.println("Converting " + rows + " rows");
+
+    // TermMapper results held in memory
+    List<String> headers = read(input).get(0);
+    long before = usedHeap();
+    List<List<String>> plain = mapPlain(termMap, read(input));
+    long plainBytes = usedHeap() - before;
+    plain = null;
+    before = usedHeap();
+    List<List<String>> mapped = TermMapper.map(termMap, read(input),
+        output.getPath());
+    long mappedBytes = usedHeap() - before;
+    report("map", plainBytes, mappedBytes, rows);
+
+    // TripleConverter models held in memory
+    List<List<String>> data = new ArrayList<List<String>>(mapped);
+    data.add(0, headers);
+
+    // load and initialize the writer classes before measuring
+    List<List<String>> warmup = new ArrayList<List<String>>(data.subList(0, 2));
+    TripleConverter.convert(prefixMap, warmup, output.getPath());
+    convertLegacy(prefixMap, headers, warmup);
+
+    before = usedHeap();
+    Model shared = TripleConverter.convert(prefixMap, data,
+        output.getPath());
+    long sharedBytes = usedHeap() - before;
+    long size = shared.size();
+    shared = null;
+    before = usedHeap();
+    Model legacy = convertLegacy(prefixMap, headers, mapped);
+    long legacyBytes = usedHeap() - before;
+    report("convert", legacyBytes, sharedBytes, rows);
+    System.out.println(size + " triples, " + legacy.size() + " triples");
+  }
+
+  /**
+   * Print the retained heap per row before and after.
+   */
+  private static void report(String name, long before, long after,
+      int rows) {
+    System.out.println(String.format(
+          "%-8s before %8.1f bytes/row  after %8.1f bytes/row  %5.1f%%",
+          name, (double) before / rows, (double) after / rows,
+          100.0 * (before - after) / before));
+  }
+
+  /**
+   * Force garbage collection and return the used heap in bytes.
+   */
+  private static long usedHeap() {
+    Runtime runtime = Runtime.getRuntime();
+    for(int i = 0; i < 5; i++) {
+      System.gc();
+      try {
+        Thread.sleep(50);
+      } catch (InterruptedException e) {
+        break;
+      }
+    }
+    return runtime.totalMemory() - runtime.freeMemory();
+  }
+
+  /**
+   * Parse the CSV input into rows, including the header row.
+   */
+  private static List<List<String>> read(String input) throws IOException {
+    CSVReader reader = new CSVReader(new StringReader(input));
+    List<List<String>> rows = new ArrayList<List<String>>();
+    for(String[] row: reader.readAll()) {
+      rows.add(Arrays.asList(row));
+    }
+    reader.close();
+    return rows;
+  }
+
+  /**
+   * Map the rows without interning, like the original TermMapper.
+   */
+  private static List<List<String>> mapPlain(Map<String,String> termMap,
+      List<List<String>> inputData) {
+    List<String> headers = inputData.remove(0);
+    ColumnPlan plan = new ColumnPlan(headers);
+    List<List<String>> results = new ArrayList<List<String>>();
+    for(List<String> row: inputData) {
+      results.add(Arrays.asList(
+            plan.map(termMap, row.toArray(new String[0]))));
+    }
+    return results;
+  }
+
+  /**
+   * Build the model the way the original TripleConverter did,
+   * with a new Resource and Statement for every cell.
+   */
+  private static Model convertLegacy(Map<String,String> prefixMap,
+      List<String> headers, List<List<String>> inputData) {
+    Model m = ModelFactory.createDefaultModel();
+    m.setNsPrefixes(prefixMap);
+    int rowNumber = 1;
+    for(List<String> row: inputData) {
+      String rowIRI = m.expandPrefix("tutorial:row-" + rowNumber);
+      m.add(
+        m.createStatement(
+          m.createResource(rowIRI),
+          m.createProperty(m.expandPrefix("rdf:type")),
+          m.createResource(m.expandPrefix("tutorial:row"))));
+      int columnNumber = 0;
+      for(String cell: row) {
+        String header = headers.get(columnNumber);
+        String headerIRI = m.expandPrefix("tutorial:column-" + header);
+        if(cell.length() == 0) {
+          // do nothing
+        } else if (header.equals("datetime") ||
+                   header.equals("comment")) {
+          m.add(
+            m.createStatement(
+              m.createResource(rowIRI),
+              m.createProperty(headerIRI),
+              m.createLiteral(cell, null)));
+        } else {
+          m.add(
+            m.createStatement(
+              m.createResource(rowIRI),
+              m.createProperty(headerIRI),
+              m.createResource(m.expandPrefix(cell))));
+        }
+        columnNumber = columnNumber + 1;
+      }
+      rowNumber = rowNumber + 1;
+    }
+    return m;
+  }
+
+}
@@ -0,0 +1,168 @@
+package obo_tutorial;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Random;
+
+import au.com.bytecode.opencsv.CSVReader;
+import au.com.bytecode.opencsv.CSVWriter;
+
+import obo_tutorial.DateNormalizer;
+import obo_tutorial.TermMapper;
+
+/**
+ * Measure TermMapper throughput in rows per second
+ * for one thread and then for increasing numbers of threads,
+ * up to the number of available processors.
+ * The input table is generated in memory and the output is discarded,
+ * so only parsing, mapping, and formatting are measured.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class TermMapperBenchmark {
+  /**
+   * The number of times each measurement is repeated before timing.
+   */
+  public static final int WARMUP_RUNS = 3;
+
+  /**
+   * The number of timed runs for each measurement.
+   */
+  public static final int TIMED_RUNS = 5;
+
+  /**
+   * Run the benchmark.
+   *
+   * @param args Optional: the number of rows to generate (default 200000)
+   */
+  public static void main(String[] args) throws IOException {
+    int rows = 200000;
+    if(args.length > 0) {
+      rows = Integer.parseInt(args[0]);
+    }
+
+    Map<String,String> termMap = generateTermMap(1000);
+    String input = generateInput(termMap, rows);
+    int processors = Runtime.getRuntime().availableProcessors();
+    System.out.println("Mapping " + rows + " rows with up to " +
+        processors + " threads");
+
+    double baseline = 0;
+    for(int threads = 1; threads <= processors; threads = threads * 2) {
+      double rate = measure(termMap, input, threads);
+      if(threads == 1) {
+        baseline = rate;
+      }
+      System.out.println(String.format("%3d threads: %12.0f rows/s  %5.2fx",
+          threads, rate, rate / baseline));
+      if(threads < processors && threads * 2 > processors) {
+        threads = processors / 2;
+      }
+    }
+  }
+
+  /**
+   * Map the input several times and return the best rate.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param input the CSV input to map
+   * @param threads the number of threads to use
+   * @return the best observed rate in rows per second
+   */
+  public static double measure(Map<String,String> termMap, String input,
+      int threads) throws IOException {
+    for(int i = 0; i < WARMUP_RUNS; i++) {
+      run(termMap, input, threads);
+    }
+    double best = 0;
+    for(int i = 0; i < TIMED_RUNS; i++) {
+      long start = System.nanoTime();
+      int count = run(termMap, input, threads);
+      long elapsed = System.nanoTime() - start;
+      best = Math.max(best, count / (elapsed / 1e9));
+    }
+    return best;
+  }
+
+  /**
+   * Map the input once, discarding the output.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param input the CSV input to map
+   * @param threads the number of threads to use
+   * @return the number of rows mapped
+   */
+  public static int run(Map<String,String> termMap, String input,
+      int threads) throws IOException {
+    CSVReader reader = new CSVReader(new StringReader(input));
+    CSVWriter writer = new CSVWriter(new NullWriter());
+    int count = TermMapper.map(termMap, reader, writer,
+        DateNormalizer.defaultColumns(), threads,
+        TermMapper.DEFAULT_CHUNK_SIZE);
+    writer.close();
+    return count;
+  }
+
+  /**
+   * Generate a term map with the given number of terms.
+   *
+   * @param size the number of terms
+   * @return a map from term strings to CURIE strings
+   */
+  public static Map<String,String> generateTermMap(int size) {
+    Map<String,String> termMap = new HashMap<String,String>();
+    for(int i = 0; i < size; i++) {
+      termMap.put("TERM " + i, "obo:TERM_" + (1000000 + i));
+    }
+    return termMap;
+  }
+
+  /**
+   * Generate a CSV table in the shape of the tutorial data,
+   * with a header row and the given number of data rows.
+   *
+   * @param termMap the terms to draw cell values from
+   * @param rows the number of data rows
+   * @return the CSV table as a string
+   */
+  public static String generateInput(Map<String,String> termMap, int rows)
+      throws IOException {
+    Random random = new Random(0);
+    String[] terms = termMap.keySet().toArray(new String[0]);
+    StringWriter buffer = new StringWriter();
+    CSVWriter writer = new CSVWriter(buffer);
+    writer.writeNext(new String[] {"datetime", "investigator", "subject",
+      "species", "strain", "sex", "group", "protocol", "organ", "disease",
+      "qualifier", "comment"});
+    for(int i = 0; i < rows; i++) {
+      String[] row = new String[12];
+      row[0] = (1 + random.nextInt(28)) + "/" + (1 + random.nextInt(12)) +
+        "/14 " + (1 + random.nextInt(12)) + ":" +
+        (10 + random.nextInt(50)) + (random.nextBoolean() ? " AM" : " PM");
+      row[1] = "JAO";
+      row[2] = String.valueOf(i);
+      for(int j = 3; j < 11; j++) {
+        row[j] = terms[random.nextInt(terms.length)];
+      }
+      row[6] = String.valueOf(random.nextInt(10));
+      row[11] = "";
+      writer.writeNext(row);
+    }
+    writer.close();
+    return buffer.toString();
+  }
+
+  /**
+   * A Writer that discards everything written to it.
+   */
+  public static class NullWriter extends Writer {
+    public void write(char[] cbuf, int off, int len) {}
+    public void flush() {}
+    public void close() {}
+  }
+
+}
@@ -0,0 +1,359 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicReference;
+
+import org.semanticweb.HermiT.Reasoner;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.reasoner.InconsistentOntologyException;
+import org.semanticweb.owlapi.reasoner.InferenceType;
+import org.semanticweb.owlapi.reasoner.OWLReasoner;
+import org.semanticweb.owlapi.util.InferredSubClassAxiomGenerator;
+
+/**
+ * Classify an ontology with the HermiT reasoner,
+ * and write the inferred superclass hierarchy to a new ontology:
+ * a subClassOf axiom for each class and each of its
+ * direct inferred super classes.
+ *
+ * Reasoning can take a long time, so it can be limited
+ * to a number of seconds, and to a number of megabytes of heap memory.
+ * The memory is checked while the reasoner runs,
+ * and counts all the memory used by the JVM,
+ * including other jobs of a JobServer.
+ * A reasoner that runs over either limit is interrupted,
+ * and nothing is written.
+ *
+ * With a cache directory, the inferred axioms are saved there,
+ * named by a digest of the axioms of the ontology and its imports
+ * (see getDigest), so an unchanged ontology is not classified again,
+ * even if it is loaded from another file.
+ * Ontologies with anonymous individuals are given new names
+ * each time they are loaded, so they never match the cache.
+ * Old cache files are not deleted.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class Classifier {
+  /**
+   * The text added to the names and IRIs of the ontologies
+   * written by classifyOutput.
+   */
+  public static final String INFERRED_SUFFIX = "-inferred";
+
+  /**
+   * The default number of seconds the reasoner can run.
+   */
+  public static final String DEFAULT_TIMEOUT = "600";
+
+  /**
+   * The number of milliseconds between checks of the limits.
+   */
+  private static final long POLL_MILLISECONDS = 200;
+
+  /**
+   * Given a source ontology, a target file, and a target IRI,
+   * classify the source ontology,
+   * and save its inferred superclass hierarchy
+   * in a new ontology with the given IRI to the target file.
+   *
+   * @param args Three strings:
+   *   1. the path of the source ontology file
+   *   2. the path of the inferred ontology (output) file
+   *   3. the IRI of the inferred ontology
+   * @param snapshotDir the directory of source ontology snapshots
+   *   (see OntologySnapshot), or null
+   * @param cacheDir the directory of cached inferences, or null
+   * @param timeout the number of seconds the reasoner can run,
+   *   or 0 for no limit
+   * @param memory the number of megabytes of heap the JVM can use
+   *   while the reasoner runs, or 0 for no limit
+   * @return true if the inferred ontology was saved
+   */
+  public static boolean classify(List<String> args, String snapshotDir,
+      String cacheDir, long timeout, long memory) {
+    if(args.size() < 3) {
+      System.out.println("ERROR: reason needs a source path, " +
+          "a target path, and a target IRI");
+      return false;
+    }
+    return classify(args.get(0), args.get(1), args.get(2), snapshotDir, cacheDir,
+        timeout, memory);
+  }
+
+  /**
+   * Given the arguments of a command that writes an ontology,
+   * where the last two are the path and the IRI of its output,
+   * classify the output ontology, and save its inferred
+   * superclass hierarchy next to it (see getInferredName):
+   * merged.owl is classified to merged-inferred.owl.
+   *
+   * @param args the arguments of the extract or merge command
+   * @param cacheDir the directory of cached inferences, or null
+   * @param timeout the number of seconds the reasoner can run,
+   *   or 0 for no limit
+   * @param memory the number of megabytes of heap the JVM can use
+   *   while the reasoner runs, or 0 for no limit
+   * @return true if the inferred ontology was saved
+   */
+  public static boolean classifyOutput(List<String> args, String cacheDir,
+      long timeout, long memory) {
+    if(args.size() < 2) {
+      return false;
+    }
+    String path = args.get(args.size() - 2);
+    String iri = args.get(args.size() - 1);
+    return classify(path, getInferredName(path), getInferredName(iri), null,
+        cacheDir, timeout, memory);
+  }
+
+  /**
+   * Given a source ontology, a target file, and a target IRI,
+   * classify the source ontology, or find its inferences in the cache,
+   * and save its inferred superclass hierarchy
+   * in a new ontology with the given IRI to the target file.
+   * Problems are reported, and nothing is written.
+   *
+   * @param sourcePath the path to the source ontology file
+   * @param targetPath the path to save the inferred ontology file
+   * @param targetIRI the IRI of the inferred ontology
+   * @param snapshotDir the directory of source ontology snapshots,
+   *   or null to always parse the source ontology file
+   * @param cacheDir the directory of cached inferences, or null
+   * @param timeout the number of seconds the reasoner can run,
+   *   or 0 for no limit
+   * @param memory the number of megabytes of heap the JVM can use
+   *   while the reasoner runs, or 0 for no limit
+   * @return true if the inferred ontology was saved
+   */
+  public static boolean classify(String sourcePath, String targetPath,
+      String targetIRI, String snapshotDir, String cacheDir,
+      long timeout, long memory) {
+    try {
+      System.out.println("Loading ontology from "+ sourcePath);
+      OWLOntology source = OntologySnapshot.load(
+          OWLManager.createOWLOntologyManager(), sourcePath, snapshotDir);
+
+      File cached = null;
+      Set<OWLAxiom> axioms = null;
+      if(cacheDir != null) {
+        File dir = new File(cacheDir);
+        dir.mkdirs();
+        cached = new File(dir, getDigest(source) + OntologySnapshot.EXTENSION);
+        if(cached.exists()) {
+          System.out.println("Using cached inferences " + cached);
+          axioms = OWLManager.createOWLOntologyManager()
+            .loadOntologyFromOntologyDocument(cached).getAxioms();
+        }
+      }
+
+      if(axioms == null) {
+        long start = System.nanoTime();
+        axioms = classify(source, timeout, memory);
+        if(axioms == null) {
+          return false;
+        }
+        System.out.println(String.format("Classified %s in %d ms",
+              sourcePath, (System.nanoTime() - start) / 1000000));
+        if(cached != null) {
+          OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+          OntologySnapshot.write(manager,
+              manager.createOntology(axioms), cached);
+        }
+      }
+
+      OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+      OWLOntology inferred =
+        manager.createOntology(axioms, IRI.create(targetIRI));
+      System.out.println("Saving inferred ontology to "+ targetPath);
+      manager.saveOntology(inferred,
+          IRI.create(new File(targetPath).toURI()));
+      return true;
+    } catch (Exception e) {
+      System.out.println("ERROR: Could not classify ontology with arguments:");
+      System.out.println ("  " + sourcePath);
+      System.out.println ("  " + targetPath);
+      System.out.println ("  " + targetIRI);
+      System.out.println(e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Given an ontology, a timeout, and a memory limit,
+   * classify the ontology with HermiT on another thread,
+   * and return its inferred subClassOf axioms.
+   * While the reasoner runs, this thread checks the limits,
+   * and interrupts the reasoner if it goes over either of them.
+   * Unsatisfiable classes are reported, and are made subclasses
+   * of owl:Nothing.
+   *
+   * @param ontology the ontology to classify
+   * @param timeout the number of seconds the reasoner can run,
+   *   or 0 for no limit
+   * @param memory the number of megabytes of heap the JVM can use
+   *   while the reasoner runs, or 0 for no limit
+   * @return the inferred axioms, or null if the reasoner
+   *   was interrupted, ran out of memory, or found the ontology
+   *   to be inconsistent
+   * @throws Exception if the reasoner fails in another way
+   */
+  public static Set<OWLAxiom> classify(final OWLOntology ontology,
+      long timeout, long memory) throws Exception {
+    final AtomicReference<OWLReasoner> reasoner =
+      new AtomicReference<OWLReasoner>();
+    // The reasoner runs on a daemon thread, so that a reasoner
+    // that is slow to stop does not keep the JVM running.
+    ExecutorService pool = Executors.newSingleThreadExecutor(
+        new ThreadFactory() {
+          public Thread newThread(Runnable runnable) {
+            Thread thread = new Thread(runnable);
+            thread.setDaemon(true);
+            return thread;
+          }
+        });
+    Future<Set<OWLAxiom>> result = pool.submit(new Callable<Set<OWLAxiom>>() {
+      public Set<OWLAxiom> call() {
+        reasoner.set(new Reasoner(ontology));
+        // the reasoner is only disposed on this thread, when it has stopped
+        try {
+          reasoner.get().precomputeInferences(InferenceType.CLASS_HIERARCHY);
+          int unsatisfiable = reasoner.get().getUnsatisfiableClasses()
+            .getEntitiesMinusBottom().size();
+          if(unsatisfiable > 0) {
+            System.out.println("WARNING: " + unsatisfiable +
+                " unsatisfiable classes");
+          }
+          return new HashSet<OWLAxiom>(
+              new InferredSubClassAxiomGenerator().createAxioms(
+                ontology.getOWLOntologyManager(), reasoner.get()));
+        } finally {
+          reasoner.get().dispose();
+        }
+      }
+    });
+
+    long deadline = System.nanoTime() + timeout * 1000000000L;
+    try {
+      while(true) {
+        try {
+          return result.get(POLL_MILLISECONDS, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+          String problem = null;
+          if(timeout > 0 && System.nanoTime() > deadline) {
+            problem = "Reasoner ran longer than " + timeout + " seconds";
+          } else if(memory > 0 && isOverMemory(memory)) {
+            problem = "Reasoner used more than " + memory + " MB";
+          }
+          if(problem != null) {
+            System.out.println("ERROR: " + problem + ", stopping it");
+            if(reasoner.get() != null) {
+              reasoner.get().interrupt();
+            }
+            result.cancel(true);
+            return null;
+          }
+        }
+      }
+    } catch (ExecutionException e) {
+      if(e.getCause() instanceof OutOfMemoryError) {
+        System.out.println("ERROR: Reasoner ran out of memory");
+        return null;
+      }
+      if(e.getCause() instanceof InconsistentOntologyException) {
+        System.out.println("ERROR: Ontology is inconsistent");
+        return null;
+      }
+      throw new Exception("Reasoner failed: " + e.getCause(), e.getCause());
+    } finally {
+      pool.shutdownNow();
+    }
+  }
+
+  /**
+   * Given a number of megabytes, check whether the heap in use
+   * is larger, collecting garbage first if it seems to be.
+   *
+   * @param memory the number of megabytes
+   * @return true if more memory is in use
+   */
+  private static boolean isOverMemory(long memory) {
+    Runtime runtime = Runtime.getRuntime();
+    long limit = memory * 1024 * 1024;
+    if(runtime.totalMemory() - runtime.freeMemory() <= limit) {
+      return false;
+    }
+    System.gc();
+    return runtime.totalMemory() - runtime.freeMemory() > limit;
+  }
+
+  /**
+   * Given an ontology, compute a SHA-256 digest of the axioms
+   * of the ontology and its imports, in sorted order,
+   * so that it does not depend on the file they were read from.
+   *
+   * @param ontology the ontology
+   * @return the digest as a string of lowercase hex digits
+   * @throws IOException if SHA-256 is not available
+   */
+  public static String getDigest(OWLOntology ontology) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is not available", e);
+    }
+    List<String> lines = new ArrayList<String>();
+    for(OWLOntology imported: ontology.getImportsClosure()) {
+      for(OWLAxiom axiom: imported.getAxioms()) {
+        lines.add(axiom.toString());
+      }
+    }
+    Collections.sort(lines);
+    for(String line: lines) {
+      md.update(line.getBytes("UTF-8"));
+      md.update((byte) '\n');
+    }
+    StringBuilder hex = new StringBuilder();
+    for(byte b: md.digest()) {
+      hex.append(String.format("%02x", b & 0xff));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Given the name of an ontology file or IRI,
+   * insert INFERRED_SUFFIX before its ".owl" extension,
+   * or add it to the end if there is none.
+   *
+   * @param name the path or IRI of an ontology
+   * @return the path or IRI of its inferred ontology
+   */
+  public static String getInferredName(String name) {
+    if(name.endsWith(".owl")) {
+      return name.substring(0, name.length() - 4) + INFERRED_SUFFIX + ".owl";
+    }
+    return name + INFERRED_SUFFIX;
+  }
+
+}
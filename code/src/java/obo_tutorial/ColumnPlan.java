@@ -0,0 +1,171 @@
+package obo_tutorial;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A header row compiled into one handler per column,
+ * so that TermMapper can map each cell without comparing header strings.
+ * Every cell is first looked up in the term map;
+ * if it is not found, the column's handler is applied.
+ * A plan is immutable and can be shared by many threads.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class ColumnPlan {
+  /**
+   * Handler for columns whose cells are copied unchanged.
+   */
+  public static final int PASSTHROUGH = 0;
+
+  /**
+   * Handler for columns whose cells are datetimes to normalize.
+   */
+  public static final int DATETIME = 1;
+
+  /**
+   * Handler for columns whose cells are prefixed to make a CURIE.
+   */
+  public static final int PREFIX = 2;
+
+  /**
+   * The handler for each column.
+   */
+  private final int[] handlers;
+
+  /**
+   * The CURIE prefix for each PREFIX column, otherwise null.
+   */
+  private final String[] prefixes;
+
+  /**
+   * The normalizer for each DATETIME column, otherwise null.
+   */
+  private final DateNormalizer[] normalizers;
+
+  /**
+   * The dictionary used to share repeated result strings, or null.
+   */
+  private final TermDictionary dictionary;
+
+  /**
+   * Given the header row of the input data,
+   * compile a handler for each column:
+   * the "datetime" column is normalized,
+   * "subject" and "group" columns are prefixed,
+   * and all other columns are passed through.
+   *
+   * @param headers the header row of the input data
+   */
+  public ColumnPlan(List<String> headers) {
+    this(headers, DateNormalizer.defaultColumns());
+  }
+
+  /**
+   * Given the header row of the input data
+   * and a map from datetime column headers to normalizers,
+   * compile a handler for each column:
+   * datetime columns are normalized,
+   * "subject" and "group" columns are prefixed,
+   * and all other columns are passed through.
+   *
+   * @param headers the header row of the input data
+   * @param dateColumns a map from column header to datetime normalizer
+   */
+  public ColumnPlan(List<String> headers,
+      Map<String,DateNormalizer> dateColumns) {
+    this(headers, dateColumns, null);
+  }
+
+  /**
+   * Given the header row of the input data,
+   * a map from datetime column headers to normalizers,
+   * and a dictionary, compile a handler for each column.
+   * Every mapped, prefixed, or normalized cell is interned
+   * in the dictionary, so that results that are kept in memory
+   * share one String for each distinct value.
+   *
+   * @param headers the header row of the input data
+   * @param dateColumns a map from column header to datetime normalizer
+   * @param dictionary the dictionary to intern results in, or null
+   */
+  public ColumnPlan(List<String> headers,
+      Map<String,DateNormalizer> dateColumns, TermDictionary dictionary) {
+    this.dictionary = dictionary;
+    handlers = new int[headers.size()];
+    prefixes = new String[headers.size()];
+    normalizers = new DateNormalizer[headers.size()];
+    for(int column = 0; column < headers.size(); column++) {
+      String header = headers.get(column);
+      if(dateColumns.containsKey(header)) {
+        handlers[column] = DATETIME;
+        normalizers[column] = dateColumns.get(header);
+      } else if(header.equals("subject")) {
+        handlers[column] = PREFIX;
+        prefixes[column] = "tutorial:subject-";
+      } else if(header.equals("group")) {
+        handlers[column] = PREFIX;
+        prefixes[column] = "tutorial:group-";
+      } else {
+        handlers[column] = PASSTHROUGH;
+      }
+    }
+  }
+
+  /**
+   * Get the handler for a column.
+   * Columns past the end of the header row are passed through.
+   *
+   * @param column the index of the column
+   * @return the handler constant for the column
+   */
+  public int getHandler(int column) {
+    if(column < handlers.length) {
+      return handlers[column];
+    }
+    return PASSTHROUGH;
+  }
+
+  /**
+   * Given a map from terms to CURIE strings and a row of input data,
+   * apply the mapping to each cell of the row.
+   * Each cell is probed in the term map exactly once.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param row the row of input data to map
+   * @return the mapped row
+   */
+  public String[] map(Map<String,String> termMap, String[] row) {
+    String[] result = new String[row.length];
+    for(int column = 0; column < row.length; column++) {
+      String cell = row[column];
+      String curie = termMap.get(cell);
+      if(curie != null) {                     // term mapping
+        result[column] = intern(curie);
+        continue;
+      }
+      switch(getHandler(column)) {
+        case DATETIME:
+          result[column] = intern(normalizers[column].normalize(cell));
+          break;
+        case PREFIX:
+          result[column] = intern(prefixes[column] + cell);
+          break;
+        default:                              // do nothing
+          result[column] = cell;
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Return the dictionary's copy of a string, if there is a dictionary.
+   */
+  private String intern(String value) {
+    if(dictionary == null) {
+      return value;
+    }
+    return dictionary.intern(value);
+  }
+
+}
@@ -12,7 +12,15 @@ import org.apache.commons.cli.Options;
 import org.apache.commons.cli.HelpFormatter;
 import org.apache.commons.cli.ParseException;
 
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import obo_tutorial.Classifier;
+import obo_tutorial.DateNormalizer;
 import obo_tutorial.Extractor;
+import obo_tutorial.JobServer;
+import obo_tutorial.LocalityIndex;
+import obo_tutorial.RDFOutput;
+import obo_tutorial.TermIndex;
 import obo_tutorial.TermMapper;
 import obo_tutorial.TripleConverter;
 import obo_tutorial.Modeller;
@@ -31,12 +39,18 @@ public class CommandLineInterface {
    */
   public static void main(String[] args) {
     CommandLineParser parser = new PosixParser();
-    Options options = new Options();
-    options.addOption(new Option("h", "help", false, "print this message"));
+    Options options = getOptions();
 
     try {
       CommandLine line = parser.parse(options, args);
-      List<String> arguments = new ArrayList<String>(Arrays.asList(args));
+      List<String> arguments = new ArrayList<String>(
+          Arrays.asList(line.getArgs()));
+      int threads = Integer.parseInt(line.getOptionValue("threads", "1"));
+      long timeout = Long.parseLong(line.getOptionValue("reason-timeout",
+            Classifier.DEFAULT_TIMEOUT));
+      long memory = Long.parseLong(line.getOptionValue("reason-memory", "0"));
+      String format = line.getOptionValue("format", RDFOutput.TURTLE_PRETTY);
+      RDFOutput.checkFormat(format);
       String command = null;
       if(arguments.size() > 0) {
         command = arguments.remove(0);
@@ -44,21 +58,56 @@ public class CommandLineInterface {
 
       if(line.hasOption("h")) {
         printUsage(options);
-      } else if (args.length == 0) {
+      } else if (command == null) {
         System.out.println("No command provided.\n");
         printUsage(options);
       } else if (command.equals("help")) {
         printUsage(options);
       } else if (command.equals("extract")) {
-        Extractor.extract(arguments);
+        boolean extracted = Extractor.extract(arguments.get(0),
+            arguments.get(1), arguments.get(2), arguments.get(3),
+            line.getOptionValue("snapshots"),
+            line.hasOption("skip-individuals"), line.hasOption("incremental"),
+            LocalityIndex.getModuleType(
+              line.getOptionValue("module-type", "STAR")));
+        if(extracted && line.hasOption("reason")) {
+          Classifier.classifyOutput(arguments,
+              line.getOptionValue("reasoner-cache"), timeout, memory);
+        }
+      } else if (command.equals("extract-batch")) {
+        Extractor.extractBatch(arguments, threads,
+            line.getOptionValue("snapshots"),
+            line.hasOption("skip-individuals"), LocalityIndex.getModuleType(
+              line.getOptionValue("module-type", "STAR")));
       } else if (command.equals("map")) {
-        TermMapper.map(arguments);
+        TermMapper.map(arguments.get(0), arguments.get(1), arguments.get(2),
+            threads,
+            DateNormalizer.parseColumns(line.getOptionValues("date-pattern")));
+      } else if (command.equals("compile-terms")) {
+        TermIndex.compile(arguments);
       } else if (command.equals("convert")) {
-        TripleConverter.convert(arguments);
+        TripleConverter.convert(arguments.get(0), arguments.get(1),
+            arguments.get(2), format, threads, line.hasOption("keep-shards"));
       } else if (command.equals("model")) {
-        Modeller.convert(arguments);
+        Modeller.convert(arguments.get(0), arguments.get(1),
+            arguments.get(2), arguments.get(3), format,
+            line.getOptionValue("store"),
+            Integer.parseInt(line.getOptionValue("batch-size", "0")),
+            line.getOptionValue("ontology-index"));
       } else if (command.equals("merge")) {
-        Merger.merge(arguments);
+        // merge removes the output path and IRI from its arguments
+        List<String> outputs = new ArrayList<String>(arguments);
+        OWLOntology merged = Merger.merge(arguments, threads,
+            line.hasOption("low-memory"), line.getOptionValue("snapshots"));
+        if(merged != null && line.hasOption("reason")) {
+          Classifier.classifyOutput(outputs,
+              line.getOptionValue("reasoner-cache"), timeout, memory);
+        }
+      } else if (command.equals("reason")) {
+        Classifier.classify(arguments, line.getOptionValue("snapshots"),
+            line.getOptionValue("reasoner-cache"), timeout, memory);
+      } else if (command.equals("serve")) {
+        JobServer.serve(arguments, threads);
       } else {
         System.out.println("Unknown command: " + command + "\n");
         printUsage(options);
@@ -74,6 +123,50 @@ public class CommandLineInterface {
     }
   }
 
+  /**
+   * Return the options shared by all the commands.
+   *
+   * @return the command-line options
+   */
+  public static Options getOptions() {
+    Options options = new Options();
+    options.addOption(new Option("h", "help", false, "print this message"));
+    options.addOption(new Option("t", "threads", true,
+          "number of threads to use for the map command, for the convert command with ntriples output, for the merge command to parse inputs with, for the extract-batch command to extract modules with, and for the serve command to run jobs with (default 1)"));
+    options.addOption(new Option(null, "keep-shards", false,
+          "with convert --threads, keep one N-Triples file per thread instead of concatenating them"));
+    options.addOption(new Option(null, "format", true,
+          "RDF output format for the convert and model commands: " +
+          RDFOutput.FORMATS + " (default " + RDFOutput.TURTLE_PRETTY + ")"));
+    options.addOption(new Option(null, "store", true,
+          "directory of a persistent TDB store for the model command, which keeps the ontology between runs"));
+    options.addOption(new Option(null, "batch-size", true,
+          "number of rows for the model command to run the SPARQL on at once, streaming the data (default 0: all rows)"));
+    options.addOption(new Option(null, "ontology-index", true,
+          "file of labels and types from the ontology for the model command to load instead of the whole ontology; built when missing or out of date"));
+    options.addOption(new Option(null, "low-memory", false,
+          "for the merge command, load and copy one input at a time instead of holding all the inputs in memory"));
+    options.addOption(new Option(null, "snapshots", true,
+          "directory of functional syntax snapshots of source ontologies for the extract, extract-batch, and merge commands, which load faster than the source files"));
+    options.addOption(new Option(null, "skip-individuals", false,
+          "for the extract and extract-batch commands, do not load individuals or subAnnotationPropertyOf axioms from the source ontology, instead of removing them after loading"));
+    options.addOption(new Option(null, "incremental", false,
+          "for the extract command, save the state of the module next to it, and reuse the saved module when the term list only gained seeds already in its signature or gained remove lines; any other change runs a full extraction"));
+    options.addOption(new Option(null, "module-type", true,
+          "type of locality-based module for the extract and extract-batch commands: " + LocalityIndex.MODULE_TYPES + " (default STAR)"));
+    options.addOption(new Option(null, "reason", false,
+          "after the extract or merge command, classify the output ontology with HermiT and write its inferred superclass hierarchy next to it, e.g. merged-inferred.owl"));
+    options.addOption(new Option(null, "reason-timeout", true,
+          "number of seconds the reasoner can run for the reason command and --reason, or 0 for no limit (default " + Classifier.DEFAULT_TIMEOUT + ")"));
+    options.addOption(new Option(null, "reason-memory", true,
+          "number of megabytes of heap the whole JVM can use while the reasoner runs, or 0 for no limit (default 0); under serve the heap is shared by every running job"));
+    options.addOption(new Option(null, "reasoner-cache", true,
+          "directory of cached inferences for the reason command and --reason, so that unchanged ontologies are not classified again"));
+    options.addOption(new Option(null, "date-pattern", true,
+          "column=pattern: parse a datetime column of the map command with this pattern; repeat to try several patterns (default datetime=d/M/yy h:mm a)"));
+    return options;
+  }
+
   /**
    * Print command-line usage information.
    *
@@ -84,13 +177,17 @@ public class CommandLineInterface {
     formatter.printHelp("obo-tutorial [options] <command> <arguments...>",
         options);
     System.out.println("commands:");
-    String fmt = " %-10s %s";
+    String fmt = " %-14s %s";
 
     System.out.println(String.format(fmt, "help", "print this message"));
     System.out.println(String.format(fmt, "extract", "<source-path> <terms-path> <target-path> <target-iri> extract a list of terms from the source ontology to a target ontology"));
-    System.out.println(String.format(fmt, "map", "<terms-path> <input-path> <output-path> map terms to IRIs"));
+    System.out.println(String.format(fmt, "extract-batch", "<source-path> <terms-path> <target-path> <target-iri> ... extract several lists of terms from the source ontology, loading it once"));
+    System.out.println(String.format(fmt, "map", "<terms-path> <input-path> <output-path> map terms to IRIs; terms-path may be a compiled index"));
+    System.out.println(String.format(fmt, "compile-terms", "<terms-path> <index-path> compile a term mapping to a binary index for map"));
     System.out.println(String.format(fmt, "convert", "<prefix-path> <input-path> <output-path> convert table to triples"));
-    System.out.println(String.format(fmt, "model", "<data-path> <ontology-path> <sparql-path> <output-path> run SPARQL on triples"));
+    System.out.println(String.format(fmt, "model", "<data-path> <ontology-path> <sparql-path> <output-path> run SPARQL on triples; sparql-path may be a directory of .rq files"));
     System.out.println(String.format(fmt, "merge", "<input-paths> <output-path> <output-iri> merge ontologies"));
+    System.out.println(String.format(fmt, "reason", "<source-path> <target-path> <target-iri> classify the source ontology with HermiT and write its inferred superclass hierarchy"));
+    System.out.println(String.format(fmt, "serve", "[port] run map, convert, model, extract, merge, and reason jobs, one command line per line, from standard input or from connections to a local port, keeping their inputs loaded"));
   }
 }
@@ -0,0 +1,110 @@
+package obo_tutorial;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.sparql.core.DatasetGraph;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.sparql.modify.GraphStoreBasic;
+
+/**
+ * A graph store that wraps another dataset
+ * and counts the quads that are actually inserted and deleted through it.
+ * Adding a quad that is already present, or deleting one that is not,
+ * is not counted.
+ *
+ * SPARQL INSERT, DELETE, INSERT DATA, DELETE DATA, and LOAD
+ * all work one quad at a time, so they are counted;
+ * CLEAR, DROP, ADD, COPY, and MOVE work on whole graphs, so they are not.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class CountingGraphStore extends GraphStoreBasic {
+  /**
+   * The number of quads inserted since the last reset.
+   */
+  private long inserted = 0;
+
+  /**
+   * The number of quads deleted since the last reset.
+   */
+  private long deleted = 0;
+
+  /**
+   * Wrap a dataset.
+   *
+   * @param dsg the dataset to send changes to
+   */
+  public CountingGraphStore(DatasetGraph dsg) {
+    super(dsg);
+  }
+
+  /**
+   * Add a quad, counting it if it was not already present.
+   *
+   * @param quad the quad to add
+   */
+  public void add(Quad quad) {
+    if(!get().contains(quad)) {
+      inserted = inserted + 1;
+      get().add(quad);
+    }
+  }
+
+  /**
+   * Add a quad, counting it if it was not already present.
+   *
+   * @param g the graph node
+   * @param s the subject node
+   * @param p the predicate node
+   * @param o the object node
+   */
+  public void add(Node g, Node s, Node p, Node o) {
+    add(new Quad(g, s, p, o));
+  }
+
+  /**
+   * Delete a quad, counting it if it was present.
+   *
+   * @param quad the quad to delete
+   */
+  public void delete(Quad quad) {
+    if(get().contains(quad)) {
+      deleted = deleted + 1;
+      get().delete(quad);
+    }
+  }
+
+  /**
+   * Delete a quad, counting it if it was present.
+   *
+   * @param g the graph node
+   * @param s the subject node
+   * @param p the predicate node
+   * @param o the object node
+   */
+  public void delete(Node g, Node s, Node p, Node o) {
+    delete(new Quad(g, s, p, o));
+  }
+
+  /**
+   * @return the number of quads inserted since the last reset
+   */
+  public long getInserted() {
+    return inserted;
+  }
+
+  /**
+   * @return the number of quads deleted since the last reset
+   */
+  public long getDeleted() {
+    return deleted;
+  }
+
+  /**
+   * Set both counts back to zero.
+   */
+  public void reset() {
+    inserted = 0;
+    deleted = 0;
+  }
+
+}
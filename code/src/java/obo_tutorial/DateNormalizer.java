@@ -0,0 +1,272 @@
+package obo_tutorial;
+
+import java.text.ParsePosition;
+import java.time.DateTimeException;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeFormatterBuilder;
+import java.time.format.ResolverStyle;
+import java.time.temporal.ChronoField;
+import java.time.temporal.TemporalAccessor;
+import java.time.temporal.TemporalQueries;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Convert datetime strings in one of several input patterns
+ * to ISO 8601 strings.
+ * Normalizers are immutable apart from a small synchronized cache
+ * of recently seen strings, so one instance can be shared by many threads.
+ * Strings that do not match any input pattern are returned unchanged;
+ * nothing is thrown for bad input.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class DateNormalizer {
+  /**
+   * The ISO 8601 pattern that datetimes are converted to.
+   */
+  public static final String OUTPUT_PATTERN = "yyyy-MM-dd'T'HH:mm:ssZ";
+
+  /**
+   * The number of recently seen strings to cache.
+   */
+  public static final int DEFAULT_CACHE_SIZE = 1024;
+
+  /**
+   * The input pattern of the tutorial data, e.g. "1/1/14 10:21 AM".
+   * Two-digit years are read as 20xx, four-digit years as they are.
+   * Dates are resolved strictly, so "31/2/14 10:00 AM" does not match.
+   */
+  public static final DateTimeFormatter DEFAULT_INPUT_FORMAT =
+    new DateTimeFormatterBuilder()
+      .parseCaseInsensitive()
+      .appendPattern("d/M/")
+      .appendValueReduced(ChronoField.YEAR, 2, 4, 2000)
+      .appendPattern(" h:mm a")
+      .toFormatter(Locale.ENGLISH)
+      .withResolverStyle(ResolverStyle.STRICT);
+
+  /**
+   * The output format.
+   */
+  private static final DateTimeFormatter OUTPUT_FORMAT =
+    DateTimeFormatter.ofPattern(OUTPUT_PATTERN, Locale.ENGLISH);
+
+  /**
+   * The input formats to try, in order.
+   */
+  private final List<DateTimeFormatter> inputFormats;
+
+  /**
+   * The zone for datetimes that do not specify one.
+   */
+  private final ZoneId zone;
+
+  /**
+   * Recently seen strings and their normalized values,
+   * least recently used first.
+   */
+  private final Map<String,String> cache;
+
+  /**
+   * Create a normalizer for the tutorial input pattern.
+   */
+  public DateNormalizer() {
+    this(Collections.singletonList(DEFAULT_INPUT_FORMAT));
+  }
+
+  /**
+   * Create a normalizer that tries each input format in order,
+   * using the system default time zone.
+   *
+   * @param inputFormats the input formats to try
+   */
+  public DateNormalizer(List<DateTimeFormatter> inputFormats) {
+    this(inputFormats, ZoneId.systemDefault(), DEFAULT_CACHE_SIZE);
+  }
+
+  /**
+   * Create a normalizer that tries each input format in order.
+   *
+   * @param inputFormats the input formats to try
+   * @param zone the zone for datetimes that do not specify one
+   * @param cacheSize the number of recently seen strings to cache
+   */
+  public DateNormalizer(List<DateTimeFormatter> inputFormats, ZoneId zone,
+      final int cacheSize) {
+    this.inputFormats = new ArrayList<DateTimeFormatter>(inputFormats);
+    this.zone = zone;
+    this.cache = new LinkedHashMap<String,String>(cacheSize * 2, 0.75f, true) {
+      protected boolean removeEldestEntry(Map.Entry<String,String> eldest) {
+        return size() > cacheSize;
+      }
+    };
+  }
+
+  /**
+   * Given a list of input pattern strings (see DateTimeFormatter),
+   * create a normalizer that tries each of them in order.
+   * Text such as "AM" is matched case-insensitively in English.
+   * Dates are resolved strictly, so invalid dates do not match.
+   * Strict resolving needs an era for "y" (year of era),
+   * so "y" is read as "u" (year), which means the same for dates AD.
+   *
+   * @param patterns the input patterns to try
+   * @return a new normalizer
+   * @throws IllegalArgumentException if a pattern is invalid
+   */
+  public static DateNormalizer forPatterns(List<String> patterns) {
+    List<DateTimeFormatter> formats = new ArrayList<DateTimeFormatter>();
+    for(String pattern: patterns) {
+      formats.add(new DateTimeFormatterBuilder()
+          .parseCaseInsensitive()
+          .appendPattern(toYearPattern(pattern))
+          .toFormatter(Locale.ENGLISH)
+          .withResolverStyle(ResolverStyle.STRICT));
+    }
+    return new DateNormalizer(formats);
+  }
+
+  /**
+   * Given a pattern string (see DateTimeFormatter),
+   * replace each "y" outside quoted text with "u".
+   *
+   * @param pattern the pattern string
+   * @return the pattern with years instead of years of era
+   */
+  public static String toYearPattern(String pattern) {
+    StringBuilder result = new StringBuilder(pattern.length());
+    boolean quoted = false;
+    for(int i = 0; i < pattern.length(); i++) {
+      char c = pattern.charAt(i);
+      if(c == '\'') {
+        quoted = !quoted;
+      } else if(c == 'y' && !quoted) {
+        c = 'u';
+      }
+      result.append(c);
+    }
+    return result.toString();
+  }
+
+  /**
+   * Get the default datetime columns:
+   * the "datetime" column with the tutorial input pattern.
+   *
+   * @return a map from column header to normalizer
+   */
+  public static Map<String,DateNormalizer> defaultColumns() {
+    Map<String,DateNormalizer> columns = new HashMap<String,DateNormalizer>();
+    columns.put("datetime", new DateNormalizer());
+    return columns;
+  }
+
+  /**
+   * Given strings of the form "column=pattern",
+   * create a normalizer for each column that tries its patterns
+   * in the order given.
+   * When no strings are given, return the default columns.
+   *
+   * @param values the column pattern strings, or null
+   * @return a map from column header to normalizer
+   * @throws IllegalArgumentException if a string or pattern is invalid
+   */
+  public static Map<String,DateNormalizer> parseColumns(String[] values) {
+    if(values == null || values.length == 0) {
+      return defaultColumns();
+    }
+    Map<String,List<String>> patterns =
+      new LinkedHashMap<String,List<String>>();
+    for(String value: values) {
+      int split = value.indexOf("=");
+      if(split < 1) {
+        throw new IllegalArgumentException(
+            "Datetime pattern must have the form column=pattern: " + value);
+      }
+      String column = value.substring(0, split);
+      if(!patterns.containsKey(column)) {
+        patterns.put(column, new ArrayList<String>());
+      }
+      patterns.get(column).add(value.substring(split + 1));
+    }
+    Map<String,DateNormalizer> columns = new HashMap<String,DateNormalizer>();
+    for(Map.Entry<String,List<String>> entry: patterns.entrySet()) {
+      columns.put(entry.getKey(), forPatterns(entry.getValue()));
+    }
+    return columns;
+  }
+
+  /**
+   * Given a datetime string, return the ISO 8601 string for it,
+   * or the same string if it does not match any input format.
+   *
+   * @param cell the string to normalize
+   * @return the normalized string, or the original string
+   */
+  public String normalize(String cell) {
+    synchronized(cache) {
+      String cached = cache.get(cell);
+      if(cached != null) {
+        return cached;
+      }
+    }
+    String result = parse(cell);
+    if(result == null) {
+      result = cell;
+    }
+    synchronized(cache) {
+      cache.put(cell, result);
+    }
+    return result;
+  }
+
+  /**
+   * Try each input format in turn and format the first match.
+   * Formats that do not match the whole string are skipped
+   * without throwing an exception.
+   *
+   * @param cell the string to parse
+   * @return the normalized string, or null if no format matched
+   */
+  private String parse(String cell) {
+    for(DateTimeFormatter format: inputFormats) {
+      ParsePosition position = new ParsePosition(0);
+      format.parseUnresolved(cell, position);
+      if(position.getErrorIndex() >= 0 ||
+         position.getIndex() != cell.length()) {
+        continue;
+      }
+
+      // strict resolving fails for invalid dates, e.g. "31/2/14 10:00 AM"
+      try {
+        TemporalAccessor parsed = format.parse(cell);
+        LocalDate date = parsed.query(TemporalQueries.localDate());
+        if(date == null) {
+          continue;
+        }
+        LocalTime time = parsed.query(TemporalQueries.localTime());
+        if(time == null) {
+          time = LocalTime.MIDNIGHT;
+        }
+        ZoneId cellZone = parsed.query(TemporalQueries.zone());
+        if(cellZone == null) {
+          cellZone = zone;
+        }
+        return ZonedDateTime.of(date, time, cellZone).format(OUTPUT_FORMAT);
+      } catch(DateTimeException e) {
+        continue;
+      }
+    }
+    return null;
+  }
+
+}
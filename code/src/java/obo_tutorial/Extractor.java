@@ -1,14 +1,21 @@
 package obo_tutorial;
 
 import java.io.File;
-import java.io.IOException;
 import java.io.FileNotFoundException;
 import java.util.Scanner;
 
 import java.util.List;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.Map;
+import java.util.HashMap;
 import java.util.Set;
 import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.IRI;
@@ -18,16 +25,13 @@ import org.semanticweb.owlapi.model.OWLDataFactory;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
 import org.semanticweb.owlapi.model.OWLAxiom;
 import org.semanticweb.owlapi.model.OWLClass;
-import org.semanticweb.owlapi.model.OWLClassExpression;
-import org.semanticweb.owlapi.model.OWLSubAnnotationPropertyOfAxiom;
+import org.semanticweb.owlapi.model.OWLSubClassOfAxiom;
 import org.semanticweb.owlapi.model.OWLEntity;
 import org.semanticweb.owlapi.model.AxiomType;
 import org.semanticweb.owlapi.model.OWLNamedIndividual;
-import org.semanticweb.owlapi.model.OWLIndividualAxiom;
 
 import org.semanticweb.owlapi.util.OWLEntityRemover;
 
-import uk.ac.manchester.cs.owlapi.modularity.SyntacticLocalityModuleExtractor;
 import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
 
 
@@ -80,30 +84,100 @@ public class Extractor {
    */
   public static void extract(String sourcePath, String listPath,
       String targetPath, String targetIRI) {
-    try {
-      File sourceFile = new File(sourcePath);
-      OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
-      System.out.println("Loading ontology from "+ sourcePath);
-      OWLOntology source = manager.loadOntologyFromOntologyDocument(sourceFile);
-      cleanOntology(source);
-
-      System.out.println("Extracting terms from "+ listPath);
-      File iriFile = new File(listPath);
-      Set<IRI> strippedIRIs = getIRIs(iriFile, "strip ");
-      stripAxioms(source, strippedIRIs);
+    extract(sourcePath, listPath, targetPath, targetIRI, null, false, false,
+        ModuleType.STAR);
+  }
 
-      Set<IRI> includedIRIs = getIRIs(iriFile);
-      Set<OWLEntity> entities = getEntities(source, includedIRIs);
+  /**
+   * Given a source ontology and a file with a list of IRIs,
+   * extract those IRIs as a module of the given type
+   * from the source ontology,
+   * and save a new ontology with the given IRI to the given target file.
+   * The source ontology is loaded and cleaned by loadSource.
+   * With a snapshot directory, the source ontology is loaded
+   * from a functional syntax snapshot if there is one,
+   * and a snapshot is written if there is not (see OntologySnapshot).
+   *
+   * When incremental, the state of the module is saved next to it,
+   * and the next time the saved module is updated without
+   * loading the source ontology,
+   * if only the term list has changed in ways that allow it
+   * (see ModuleState).
+   * A saved module is only updated if it was extracted
+   * with the same module type.
+   *
+   * @param sourcePath the path to the source ontology file
+   * @param listPath the path to the list of IRIs to extract
+   * @param targetPath the path to save the resulting ontology file
+   * @param targetIRI the IRI of the resulting ontology
+   * @param snapshotDir the directory of source ontology snapshots,
+   *   or null to always parse the source ontology file
+   * @param skipIndividuals true to skip individuals and
+   *   subAnnotationPropertyOf axioms while parsing
+   * @param incremental true to update the saved module when possible
+   * @param moduleType the type of module to extract: BOT, TOP, or STAR
+   * @return true if the module was extracted or is up to date,
+   *   false if it could not be extracted
+   */
+  public static boolean extract(String sourcePath, String listPath,
+      String targetPath, String targetIRI, String snapshotDir,
+      boolean skipIndividuals, boolean incremental, ModuleType moduleType) {
+    return extract(null, sourcePath, listPath, targetPath, targetIRI,
+        snapshotDir, skipIndividuals, incremental, moduleType);
+  }
 
-      File extractedFile = new File(targetPath);
-      IRI extractedIRI = IRI.create(targetIRI);
-      OWLOntology extracted = extractModule(source, entities, extractedIRI);
+  /**
+   * Given a source ontology that is already loaded and cleaned
+   * (see loadSource), the path it was loaded from,
+   * and a file with a list of IRIs,
+   * extract those IRIs as a module of the given type,
+   * as extract() would, without loading the source ontology again.
+   * The source ontology is changed by the "strip" lines of the term list,
+   * so it must not be shared (see FileCache.getSource).
+   *
+   * @param source the loaded source ontology
+   * @param sourcePath the path the source ontology was loaded from
+   * @param listPath the path to the list of IRIs to extract
+   * @param targetPath the path to save the resulting ontology file
+   * @param targetIRI the IRI of the resulting ontology
+   * @param incremental true to update the saved module when possible
+   * @param moduleType the type of module to extract: BOT, TOP, or STAR
+   * @return true if the module was extracted or is up to date,
+   *   false if it could not be extracted
+   */
+  public static boolean extract(OWLOntology source, String sourcePath,
+      String listPath, String targetPath, String targetIRI,
+      boolean incremental, ModuleType moduleType) {
+    return extract(source, sourcePath, listPath, targetPath, targetIRI,
+        null, false, incremental, moduleType);
+  }
 
-      Set<IRI> removedIRIs = getIRIs(iriFile, "remove ");
-      removeClasses(extracted, removedIRIs);
+  /**
+   * Given a source ontology, or null to load it,
+   * and the arguments of extract(), extract a module as extract() does.
+   */
+  private static boolean extract(OWLOntology source, String sourcePath,
+      String listPath, String targetPath, String targetIRI,
+      String snapshotDir, boolean skipIndividuals, boolean incremental,
+      ModuleType moduleType) {
+    try {
+      System.out.println("Extracting terms from "+ listPath);
+      TermList terms = TermList.read(new File(listPath));
+      if(incremental && ModuleState.update(sourcePath, targetPath,
+            targetIRI, terms, moduleType)) {
+        return true;
+      }
 
-      System.out.println("Saving extracted ontology to "+ targetPath);
-      manager.saveOntology(extracted, IRI.create(extractedFile.toURI()));
+      if(source == null) {
+        source = loadSource(sourcePath, snapshotDir, skipIndividuals);
+      }
+      Set<IRI> signature =
+        extract(source, terms, targetPath, targetIRI, moduleType);
+      if(incremental) {
+        ModuleState.save(sourcePath, targetPath, targetIRI, terms,
+            signature, moduleType);
+      }
+      return true;
     } catch (Exception e) {
       System.out.println("ERROR: Could not extract module with arguments:");
       System.out.println ("  " + listPath);
@@ -111,7 +185,262 @@ public class Extractor {
       System.out.println ("  " + targetIRI);
       System.out.println ("  " + targetPath);
       System.out.println(e.getMessage());
+      return false;
+    }
+  }
+
+  /**
+   * Given a clean source ontology and the directives of a term list,
+   * strip the source ontology, extract a module from it,
+   * and save the module with the given IRI to the given target file.
+   *
+   * @param source the clean source ontology, which is changed
+   * @param terms the directives of the term list
+   * @param targetPath the path to save the resulting ontology file
+   * @param targetIRI the IRI of the resulting ontology
+   * @param moduleType the type of module to extract
+   * @return the IRIs in the signature of the logical axioms of the module
+   *   before classes were removed (see ModuleState)
+   * @throws Exception if the module cannot be extracted or saved
+   */
+  private static Set<IRI> extract(OWLOntology source, TermList terms,
+      String targetPath, String targetIRI, ModuleType moduleType)
+      throws Exception {
+    OWLOntologyManager manager = source.getOWLOntologyManager();
+    stripAxioms(source, terms.getStripped());
+
+    Set<OWLEntity> entities = getEntities(source, terms.getIncluded());
+
+    File extractedFile = new File(targetPath);
+    IRI extractedIRI = IRI.create(targetIRI);
+    OWLOntology extracted =
+      extractModule(source, entities, extractedIRI, moduleType);
+
+    Set<IRI> signature = new HashSet<IRI>();
+    for(OWLAxiom axiom: extracted.getLogicalAxioms()) {
+      for(OWLEntity entity: axiom.getSignature()) {
+        signature.add(entity.getIRI());
+      }
+    }
+
+    removeClasses(extracted, terms.getRemoved());
+
+    System.out.println("Saving extracted ontology to "+ targetPath);
+    manager.saveOntology(extracted, IRI.create(extractedFile.toURI()));
+    return signature;
+  }
+
+  /**
+   * Given a source ontology and any number of term lists,
+   * each with a target file and IRI,
+   * load and clean the source once,
+   * and extract a module of the given type for each term list
+   * (see extractBatch).
+   *
+   * @param args At least four strings:
+   *   1. the path of the source ontology file
+   *   then for each module, three strings:
+   *   2. the path of the file containing a line-separated list of IRIs
+   *   3. the path of the extracted ontology (output) file
+   *   4. the IRI of the extracted ontology
+   * @param threads the number of modules to extract at once
+   * @param snapshotDir the directory of source ontology snapshots
+   *   (see OntologySnapshot), or null
+   * @param skipIndividuals true to skip individuals and
+   *   subAnnotationPropertyOf axioms while parsing (see loadSource)
+   * @param moduleType the type of module to extract: BOT, TOP, or STAR
+   * @return true if every module was extracted, false otherwise
+   */
+  public static boolean extractBatch(List<String> args, int threads,
+      String snapshotDir, boolean skipIndividuals, ModuleType moduleType) {
+    List<String[]> modules = getModules(args);
+    if(modules == null) {
+      return false;
+    }
+    return extractBatch(args.get(0), modules, threads, snapshotDir,
+        skipIndividuals, moduleType);
+  }
+
+  /**
+   * Given the arguments of the extract-batch command,
+   * return the term list path, target path, and target IRI
+   * of each module, or report that there are too few arguments.
+   *
+   * @param args the source path, then three strings for each module
+   *   (see extractBatch)
+   * @return a list of arrays of three strings, or null
+   */
+  public static List<String[]> getModules(List<String> args) {
+    if(args.size() < 4 || (args.size() - 1) % 3 != 0) {
+      System.out.println("ERROR: extract-batch needs a source path, " +
+          "then a terms path, target path, and target IRI for each module");
+      return null;
+    }
+    List<String[]> modules = new ArrayList<String[]>();
+    for(int i = 1; i < args.size(); i = i + 3) {
+      modules.add(new String[] {
+        args.get(i), args.get(i + 1), args.get(i + 2)
+      });
+    }
+    return modules;
+  }
+
+  /**
+   * Given a source ontology and a list of modules,
+   * each a term list path, a target path, and a target IRI,
+   * load and clean the source ontology once (see loadSource),
+   * and extract a module of the given type from it for each,
+   * as extract() would.
+   * Term lists with the same "strip" lines
+   * share a locality index, built once (see LocalityIndex).
+   * The modules are extracted and saved on a pool of threads,
+   * each into its own manager, and the time for each is printed.
+   * A module that fails is reported, and the others carry on.
+   *
+   * @param sourcePath the path to the source ontology file
+   * @param modules a list of arrays of three strings:
+   *   the path to the list of IRIs to extract,
+   *   the path to save the resulting ontology file,
+   *   and the IRI of the resulting ontology
+   * @param threads the number of modules to extract at once
+   * @param snapshotDir the directory of source ontology snapshots,
+   *   or null to always parse the source ontology file
+   * @param skipIndividuals true to skip individuals and
+   *   subAnnotationPropertyOf axioms while parsing
+   * @param moduleType the type of module to extract: BOT, TOP, or STAR
+   * @return true if every module was extracted, false if the source
+   *   could not be loaded or any module failed
+   */
+  public static boolean extractBatch(String sourcePath, List<String[]> modules,
+      int threads, String snapshotDir, boolean skipIndividuals,
+      ModuleType moduleType) {
+    OWLOntology source;
+    try {
+      source = loadSource(sourcePath, snapshotDir, skipIndividuals);
+    } catch (Exception e) {
+      System.out.println("ERROR: Could not load source ontology: " +
+          sourcePath);
+      System.out.println(e.getMessage());
+      return false;
+    }
+    return extractBatch(source, modules, threads, moduleType);
+  }
+
+  /**
+   * Given a source ontology that is already loaded and cleaned
+   * (see loadSource) and a list of modules,
+   * extract a module of the given type for each,
+   * as extractBatch() would, without loading the source ontology again.
+   * The source ontology is only read,
+   * but it must not be used by other threads while the modules are
+   * extracted.
+   *
+   * @param source the loaded source ontology
+   * @param modules a list of arrays of three strings:
+   *   the path to the list of IRIs to extract,
+   *   the path to save the resulting ontology file,
+   *   and the IRI of the resulting ontology
+   * @param threads the number of modules to extract at once
+   * @param moduleType the type of module to extract: BOT, TOP, or STAR
+   * @return true if every module was extracted, false otherwise
+   */
+  public static boolean extractBatch(OWLOntology source,
+      List<String[]> modules, int threads, final ModuleType moduleType) {
+    // Read the term lists and build the locality indexes one at a time,
+    // since the source ontology is not safe to read from many threads.
+    Map<IRI,Set<OWLEntity>> index = getEntityIndex(source);
+    Map<Set<IRI>,LocalityIndex> localityIndexes =
+      new HashMap<Set<IRI>,LocalityIndex>();
+    List<Callable<String>> jobs = new ArrayList<Callable<String>>();
+    boolean complete = true;
+    for(final String[] module: modules) {
+      try {
+        TermList terms = TermList.read(new File(module[0]));
+        Set<IRI> strippedIRIs = terms.getStripped();
+        LocalityIndex localityIndex = localityIndexes.get(strippedIRIs);
+        if(localityIndex == null) {
+          localityIndex = LocalityIndex.create(source,
+              getAnonymousSuperClassAxioms(source, strippedIRIs));
+          localityIndexes.put(strippedIRIs, localityIndex);
+        }
+        final LocalityIndex moduleIndex = localityIndex;
+        final Set<OWLEntity> entities =
+          getEntities(index, terms.getIncluded());
+        final Set<IRI> removedIRIs = terms.getRemoved();
+        jobs.add(new Callable<String>() {
+          public String call() throws Exception {
+            long start = System.nanoTime();
+            OWLOntology extracted = moduleIndex.extractAsOntology(entities,
+                moduleType, IRI.create(module[2]));
+            removeClasses(extracted, removedIRIs);
+            extracted.getOWLOntologyManager().saveOntology(extracted,
+                IRI.create(new File(module[1]).toURI()));
+            return String.format("Extracted %s to %s in %d ms",
+                module[0], module[1], (System.nanoTime() - start) / 1000000);
+          }
+        });
+      } catch (Exception e) {
+        System.out.println("ERROR: Could not read terms from: " + module[0]);
+        System.out.println(e.getMessage());
+        complete = false;
+      }
+    }
+
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try {
+      List<Future<String>> results = pool.invokeAll(jobs);
+      for(int i = 0; i < results.size(); i++) {
+        try {
+          System.out.println(results.get(i).get());
+        } catch (ExecutionException e) {
+          System.out.println("ERROR: Could not extract module " +
+              (i + 1) + " of " + results.size());
+          System.out.println(e.getCause().getMessage());
+          complete = false;
+        }
+      }
+    } catch (InterruptedException e) {
+      System.out.println("ERROR: Interrupted while extracting modules");
+      complete = false;
+    } finally {
+      pool.shutdownNow();
+    }
+    return complete;
+  }
+
+  /**
+   * Given the path of a source ontology, an optional snapshot directory,
+   * and whether to skip individuals, load and clean the source ontology.
+   * When skipping individuals, the ontology is loaded with a
+   * FilteringOntologyManager, so the axioms that cleanOntology removes
+   * are never added, and its snapshots are kept in a "filtered"
+   * subdirectory of the snapshot directory,
+   * apart from the complete snapshots used by other commands.
+   *
+   * @param sourcePath the path to the source ontology file
+   * @param snapshotDir the directory of source ontology snapshots,
+   *   or null to always parse the source ontology file
+   * @param skipIndividuals true to skip individuals and
+   *   subAnnotationPropertyOf axioms while parsing
+   * @return the clean source ontology
+   * @throws OWLOntologyCreationException if the ontology cannot be loaded
+   */
+  public static OWLOntology loadSource(String sourcePath, String snapshotDir,
+      boolean skipIndividuals) throws OWLOntologyCreationException {
+    OWLOntologyManager manager;
+    if(skipIndividuals) {
+      manager = new FilteringOntologyManager();
+      if(snapshotDir != null) {
+        snapshotDir = new File(snapshotDir, "filtered").getPath();
+      }
+    } else {
+      manager = OWLManager.createOWLOntologyManager();
     }
+    System.out.println("Loading ontology from "+ sourcePath);
+    OWLOntology source =
+      OntologySnapshot.load(manager, sourcePath, snapshotDir);
+    cleanOntology(source);
+    return source;
   }
 
   /**
@@ -136,10 +465,8 @@ public class Extractor {
     Scanner scanner = new Scanner(file);
     while (scanner.hasNextLine()) {
       String line = scanner.nextLine().trim();
-      if(!line.startsWith(prefix + "http")) { continue; }
-      String suffix = line.substring(prefix.length());
-      String iri = suffix.substring(0, Math.min(suffix.length(), suffix.indexOf(" ")));
-      //System.out.println("<"+ iri +">");
+      String iri = TermList.parseIRI(line, prefix);
+      if(iri == null) { continue; }
       iris.add(IRI.create(iri));
     }
     return iris;
@@ -154,35 +481,75 @@ public class Extractor {
    * @return the set of entities
    */
   public static Set<OWLEntity> getEntities(OWLOntology ontology, Set<IRI> iris) {
+    return getEntities(getEntityIndex(ontology), iris);
+  }
+
+  /**
+   * Given an index from IRIs to entities (see getEntityIndex)
+   * and a list of IRIs, get a set of entities with those IRIs.
+   *
+   * @param index the index of the ontology to search
+   * @param iris the set of IRIs to collect entities for
+   * @return the set of entities
+   */
+  public static Set<OWLEntity> getEntities(Map<IRI,Set<OWLEntity>> index,
+      Set<IRI> iris) {
     Set<OWLEntity> entities = new HashSet<OWLEntity>();
     for (IRI iri: iris) {
-      entities.addAll(ontology.getEntitiesInSignature(iri));
+      Set<OWLEntity> found = index.get(iri);
+      if(found != null) {
+        entities.addAll(found);
+      }
     }
     return entities;
   }
 
+  /**
+   * Given an ontology, index the entities in its signature by IRI,
+   * in one pass, so that long lists of IRIs can be looked up quickly.
+   * An IRI can name several entities, such as a class and an individual.
+   *
+   * @param ontology the ontology to index
+   * @return a map from IRI to the entities with that IRI
+   */
+  public static Map<IRI,Set<OWLEntity>> getEntityIndex(OWLOntology ontology) {
+    Map<IRI,Set<OWLEntity>> index = new HashMap<IRI,Set<OWLEntity>>();
+    for(OWLEntity entity: ontology.getSignature()) {
+      Set<OWLEntity> entities = index.get(entity.getIRI());
+      if(entities == null) {
+        entities = new HashSet<OWLEntity>(2);
+        index.put(entity.getIRI(), entities);
+      }
+      entities.add(entity);
+    }
+    return index;
+  }
+
   /**
    * Remove unwanted axioms from the ontology before extraction.
    * 1. A bug in older versions of OWLAPI throws an error when trying to 
    * extract a module from an ontology that includes subAnnotationPropertyOf
    * axioms.
    * 2. We also remove individuals.
+   * The axioms are collected first, then removed in one change.
    *
    * @param ontology the ontology to remove the axioms from
    */
   public static void cleanOntology(OWLOntology ontology) {
-    Set<OWLSubAnnotationPropertyOfAxiom> axioms = ontology.getAxioms(AxiomType.SUB_ANNOTATION_PROPERTY_OF);
-    ontology.getOWLOntologyManager().removeAxioms(ontology, axioms);
+    Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+    axioms.addAll(ontology.getAxioms(AxiomType.SUB_ANNOTATION_PROPERTY_OF));
     Set<OWLNamedIndividual> individuals = ontology.getIndividualsInSignature(true);
     for (OWLNamedIndividual individual: individuals) {
-      Set<OWLIndividualAxiom> axioms2 = ontology.getAxioms(individual);
-      ontology.getOWLOntologyManager().removeAxioms(ontology, axioms2);
+      axioms.addAll(ontology.getAxioms(individual));
+    }
+    if(!axioms.isEmpty()) {
+      ontology.getOWLOntologyManager().removeAxioms(ontology, axioms);
     }
   }
 
   /**
-   * Now we use the SyntacticLocalityModuleExtractor to extract the given
-   * set of entities (and all related entities, recursively) into a
+   * Now we extract the given set of entities
+   * (and all related entities, recursively) as a STAR module into a
    * new ontology with the given IRI.
    *
    * @param ontology the source ontology for the extraction
@@ -192,31 +559,70 @@ public class Extractor {
    */
   public static OWLOntology extractModule(OWLOntology ontology,
       Set<OWLEntity> entities, IRI iri) throws OWLOntologyCreationException {
-    SyntacticLocalityModuleExtractor extractor =
-      new SyntacticLocalityModuleExtractor(
-        ontology.getOWLOntologyManager(), ontology, ModuleType.STAR);
-    return extractor.extractAsOntology(entities, iri);
+    return extractModule(ontology, entities, iri, ModuleType.STAR);
+  }
+
+  /**
+   * Given a source ontology, a set of entities, an IRI, and a module type,
+   * extract a syntactic locality-based module of that type
+   * for the entities into a new ontology with the given IRI,
+   * in the manager of the source ontology.
+   * The module is the same as the SyntacticLocalityModuleExtractor
+   * would extract, but the axioms are indexed first (see LocalityIndex),
+   * so that fewer locality checks are needed.
+   *
+   * @param ontology the source ontology for the extraction
+   * @param entities the entities to extract
+   * @param iri the IRI for the new ontology
+   * @param moduleType the type of module to extract: BOT, TOP, or STAR
+   * @return the new ontology, with the given entities and IRI
+   */
+  public static OWLOntology extractModule(OWLOntology ontology,
+      Set<OWLEntity> entities, IRI iri, ModuleType moduleType)
+      throws OWLOntologyCreationException {
+    LocalityIndex index =
+      LocalityIndex.create(ontology, Collections.<OWLAxiom>emptySet());
+    return ontology.getOWLOntologyManager().createOntology(
+        index.extract(entities, moduleType), iri);
+  }
+
+  /**
+   * Given an ontology and a set of class IRIs, return the axioms
+   * that assert anonymous super class expressions of those classes,
+   * which stripAxioms would remove.
+   *
+   * @param ontology the ontology to search
+   * @param iris the set of IRIs to search for
+   * @return the set of axioms
+   */
+  public static Set<OWLAxiom> getAnonymousSuperClassAxioms(
+      OWLOntology ontology, Set<IRI> iris) {
+    OWLDataFactory df = ontology.getOWLOntologyManager().getOWLDataFactory();
+    Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+    for(IRI iri: iris) {
+      OWLClass cls = df.getOWLClass(iri);
+      for(OWLSubClassOfAxiom axiom: ontology.getSubClassAxiomsForSubClass(cls)) {
+        if(axiom.getSuperClass().isAnonymous()) {
+          axioms.add(axiom);
+        }
+      }
+    }
+    return axioms;
   }
 
   /**
    * Given an ontology and a set of class IRIs, for each IRI get its
    * super class expressions and remove any that are anonymous
    * (leaving only named classes as super classes).
+   * The axioms are collected first, then removed in one change.
    *
    * @param ontology the ontology to modify
    * @param iris the set or IRIs to modify
    */
   public static void stripAxioms(OWLOntology ontology, Set<IRI> iris) {
-    OWLOntologyManager manager = ontology.getOWLOntologyManager();
-    OWLDataFactory df = manager.getOWLDataFactory();
-    for(IRI iri: iris) {
-      OWLClass cls = df.getOWLClass(iri);
-      Set<OWLClassExpression> supers = cls.getSuperClasses(ontology);
-      for(OWLClassExpression sup: supers) {
-        if(sup.isAnonymous()) {
-          manager.removeAxiom(ontology, df.getOWLSubClassOfAxiom(cls, sup));
-        }
-      }
+    Set<OWLAxiom> axioms = getAnonymousSuperClassAxioms(ontology, iris);
+    if(!axioms.isEmpty()) {
+      ontology.getOWLOntologyManager().removeAxioms(ontology, axioms);
     }
   }
 
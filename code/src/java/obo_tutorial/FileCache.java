@@ -0,0 +1,438 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.LinkedHashSet;
+import java.util.Properties;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.hp.hpl.jena.graph.Graph;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddImport;
+import org.semanticweb.owlapi.model.AddOntologyAnnotation;
+import org.semanticweb.owlapi.model.OWLAnnotation;
+import org.semanticweb.owlapi.model.OWLImportsDeclaration;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.util.AutoIRIMapper;
+
+/**
+ * A cache of the inputs that commands load from files:
+ * term maps, prefixes, ontology graphs, SPARQL pipelines,
+ * and OWL ontologies to extract from or merge,
+ * so that a long-running process (see JobServer)
+ * only loads each file once.
+ *
+ * Each value is kept with the state of the files it was loaded from
+ * (see FileState), and is loaded again when any of them change.
+ * Files imported by an ontology are not checked.
+ * Values are never evicted, and are shared by all callers,
+ * so they must not be changed.
+ * OWL ontologies are the exception: each caller gets its own copy,
+ * in its own manager, which it may change.
+ * Each value is loaded once, by the first caller that asks for it,
+ * and only callers that ask for the same value wait while it loads.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class FileCache {
+  /**
+   * A cached value and the state of the files it was loaded from.
+   */
+  private static class Entry<T> {
+    private final T value;
+    private final List<String> paths;
+    private final Properties states;
+
+    private Entry(T value, List<String> paths, Properties states) {
+      this.value = value;
+      this.paths = paths;
+      this.states = states;
+    }
+  }
+
+  /**
+   * Term maps by path.
+   */
+  private final ConcurrentMap<String,FutureTask<Entry<Map<String,String>>>>
+    termMaps =
+    new ConcurrentHashMap<String,FutureTask<Entry<Map<String,String>>>>();
+
+  /**
+   * Prefix maps by path.
+   */
+  private final ConcurrentMap<String,FutureTask<Entry<Map<String,String>>>>
+    prefixMaps =
+    new ConcurrentHashMap<String,FutureTask<Entry<Map<String,String>>>>();
+
+  /**
+   * Ontology graphs by ontology path and index path.
+   */
+  private final ConcurrentMap<String,FutureTask<Entry<Graph>>> ontologies =
+    new ConcurrentHashMap<String,FutureTask<Entry<Graph>>>();
+
+  /**
+   * SPARQL pipelines by path.
+   */
+  private final ConcurrentMap<String,FutureTask<Entry<UpdatePipeline>>>
+    pipelines =
+    new ConcurrentHashMap<String,FutureTask<Entry<UpdatePipeline>>>();
+
+  /**
+   * Clean source ontologies to extract from,
+   * by path and whether individuals were skipped.
+   */
+  private final ConcurrentMap<String,FutureTask<Entry<OWLOntology>>> sources =
+    new ConcurrentHashMap<String,FutureTask<Entry<OWLOntology>>>();
+
+  /**
+   * Ontologies to merge, by path and the directories searched for imports.
+   */
+  private final ConcurrentMap<String,FutureTask<Entry<OWLOntology>>> inputs =
+    new ConcurrentHashMap<String,FutureTask<Entry<OWLOntology>>>();
+
+  /**
+   * The number of values loaded.
+   */
+  private final AtomicInteger loads = new AtomicInteger();
+
+  /**
+   * The number of values found in the cache.
+   */
+  private final AtomicInteger hits = new AtomicInteger();
+
+  /**
+   * Given the path of a term mapping file or index,
+   * return its term map (see TermMapper.loadTermMap).
+   *
+   * @param path the path of the term mapping file or index
+   * @return a map from term strings to CURIE strings
+   * @throws IOException if the file cannot be read
+   */
+  public Map<String,String> getTermMap(final String path)
+      throws IOException {
+    List<String> paths = new ArrayList<String>();
+    paths.add(path);
+    return get(termMaps, path, paths, new Callable<Map<String,String>>() {
+      public Map<String,String> call() throws IOException {
+        return TermMapper.loadTermMap(path);
+      }
+    });
+  }
+
+  /**
+   * Given the path of a Turtle file with prefixes,
+   * return its prefixes (see TripleConverter.loadPrefixMap).
+   *
+   * @param path the path of the Turtle file
+   * @return a map from prefix to IRI string
+   * @throws IOException if the file cannot be read
+   */
+  public Map<String,String> getPrefixMap(final String path)
+      throws IOException {
+    List<String> paths = new ArrayList<String>();
+    paths.add(path);
+    return get(prefixMaps, path, paths, new Callable<Map<String,String>>() {
+      public Map<String,String> call() throws IOException {
+        return TripleConverter.loadPrefixMap(path);
+      }
+    });
+  }
+
+  /**
+   * Given the path of an application ontology file,
+   * and an optional path to a cached ontology index,
+   * return its ontology graph (see Modeller.readOntology).
+   *
+   * @param ontologyPath the path of the application ontology file
+   * @param indexPath the path of a cached ontology index,
+   *   or null to use the whole ontology
+   * @return the ontology graph
+   * @throws IOException if the file or index cannot be read
+   */
+  public Graph getOntology(final String ontologyPath,
+      final String indexPath) throws IOException {
+    List<String> paths = new ArrayList<String>();
+    paths.add(ontologyPath);
+    return get(ontologies, ontologyPath + " " + indexPath, paths,
+        new Callable<Graph>() {
+          public Graph call() throws IOException {
+            return Modeller.readOntology(ontologyPath, indexPath);
+          }
+        });
+  }
+
+  /**
+   * Given the path of a SPARQL Update file or a directory of them,
+   * return a copy of its pipeline (see UpdatePipeline.copy),
+   * with its own totals.
+   * A directory is loaded again when a file is changed, added or removed.
+   *
+   * @param path the path of a SPARQL file or a directory of them
+   * @return the pipeline
+   * @throws IOException if a file cannot be read or parsed
+   */
+  public UpdatePipeline getPipeline(final String path)
+      throws IOException {
+    List<String> paths = new ArrayList<String>();
+    for(File file: UpdatePipeline.getFiles(path)) {
+      paths.add(file.getPath());
+    }
+    return get(pipelines, path, paths, new Callable<UpdatePipeline>() {
+      public UpdatePipeline call() throws IOException {
+        return UpdatePipeline.load(path);
+      }
+    }).copy();
+  }
+
+  /**
+   * Given the path of a source ontology, an optional snapshot directory,
+   * and whether to skip individuals,
+   * return a copy of the clean source ontology (see Extractor.loadSource)
+   * with its imports, in a new manager.
+   * The snapshot directory is only used when the source is loaded.
+   *
+   * @param path the path of the source ontology file
+   * @param snapshotDir the directory of source ontology snapshots, or null
+   * @param skipIndividuals true to skip individuals and
+   *   subAnnotationPropertyOf axioms while parsing
+   * @return a copy of the clean source ontology
+   * @throws IOException if the ontology cannot be loaded
+   */
+  public OWLOntology getSource(final String path, final String snapshotDir,
+      final boolean skipIndividuals) throws IOException {
+    List<String> paths = new ArrayList<String>();
+    paths.add(path);
+    return copy(get(sources, path + " " + skipIndividuals, paths,
+          new Callable<OWLOntology>() {
+            public OWLOntology call() throws OWLOntologyCreationException {
+              return Extractor.loadSource(path, snapshotDir, skipIndividuals);
+            }
+          }));
+  }
+
+  /**
+   * Given the path of an ontology to merge,
+   * the paths of all the ontologies it is merged with,
+   * and an optional snapshot directory,
+   * return a copy of the ontology with its imports, in a new manager,
+   * loaded as Merger.loadOntology does.
+   * Imports are looked for in the directories of all the ontologies,
+   * as Merger.load does.
+   * The snapshot directory is only used when the ontology is loaded.
+   *
+   * @param path the path of the ontology file
+   * @param mergePaths the paths of all the ontologies to merge
+   * @param snapshotDir the directory of ontology snapshots, or null
+   * @return a copy of the ontology
+   * @throws IOException if the ontology cannot be loaded
+   */
+  public OWLOntology getInput(final String path,
+      final List<String> mergePaths, final String snapshotDir)
+      throws IOException {
+    Set<File> directories = new LinkedHashSet<File>();
+    for(String mergePath: mergePaths) {
+      directories.add(new File(mergePath).getCanonicalFile().getParentFile());
+    }
+    List<String> paths = new ArrayList<String>();
+    paths.add(path);
+    return copy(get(inputs, path + " " + directories, paths,
+          new Callable<OWLOntology>() {
+            public OWLOntology call() throws OWLOntologyCreationException {
+              OWLOntologyManager manager =
+                OWLManager.createOWLOntologyManager();
+              for(AutoIRIMapper mapper: Merger.getIRIMappers(mergePaths)) {
+                manager.addIRIMapper(mapper);
+              }
+              return OntologySnapshot.load(manager, path, snapshotDir);
+            }
+          }));
+  }
+
+  /**
+   * @return the number of values loaded from files
+   */
+  public int getLoads() {
+    return loads.get();
+  }
+
+  /**
+   * @return the number of values found in the cache
+   */
+  public int getHits() {
+    return hits.get();
+  }
+
+  /**
+   * Given a map of entries, a key, a list of paths, and a loader,
+   * return the value for the key if it was loaded from the same files
+   * and none of them have changed, or else load it.
+   * The first caller to miss puts a task for the key in the map and runs it;
+   * other callers for the key wait for that task.
+   * A task that fails, or whose value is out of date, is removed,
+   * so the next caller loads the value again.
+   *
+   * @param entries the map of entries
+   * @param key the key of the value
+   * @param paths the paths the value depends on
+   * @param loader loads the value from its files
+   * @return the cached or loaded value
+   * @throws IOException if a file cannot be read
+   */
+  private <T> T get(ConcurrentMap<String,FutureTask<Entry<T>>> entries,
+      String key, final List<String> paths, final Callable<T> loader)
+      throws IOException {
+    while(true) {
+      FutureTask<Entry<T>> task = entries.get(key);
+      boolean loading = false;
+      if(task == null) {
+        FutureTask<Entry<T>> created =
+          new FutureTask<Entry<T>>(new Callable<Entry<T>>() {
+            public Entry<T> call() throws Exception {
+              Properties states = record(paths);
+              return new Entry<T>(loader.call(), paths, states);
+            }
+          });
+        task = entries.putIfAbsent(key, created);
+        if(task == null) {
+          task = created;
+          loading = true;
+          task.run();
+        }
+      }
+
+      Entry<T> entry;
+      try {
+        entry = task.get();
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new IOException("Interrupted while loading " + key, e);
+      } catch (ExecutionException e) {
+        entries.remove(key, task);
+        Throwable cause = e.getCause();
+        if(cause instanceof IOException) {
+          throw (IOException) cause;
+        }
+        if(cause instanceof RuntimeException) {
+          throw (RuntimeException) cause;
+        }
+        if(cause instanceof Error) {
+          throw (Error) cause;
+        }
+        throw new IOException("Could not load " + key, cause);
+      }
+
+      if(loading) {
+        loads.incrementAndGet();
+        return entry.value;
+      }
+      if(isCurrent(entry, paths)) {
+        hits.incrementAndGet();
+        return entry.value;
+      }
+      entries.remove(key, task);
+    }
+  }
+
+  /**
+   * Given an entry and a list of paths,
+   * check whether the entry was loaded from the same files
+   * and none of them have changed.
+   *
+   * @param entry the cached entry
+   * @param paths the paths the value depends on
+   * @return true if the entry is current
+   * @throws IOException if a file cannot be read
+   */
+  private static <T> boolean isCurrent(Entry<T> entry, List<String> paths)
+      throws IOException {
+    if(!entry.paths.equals(paths)) {
+      return false;
+    }
+    for(int i = 0; i < paths.size(); i++) {
+      FileState state = new FileState(paths.get(i));
+      if(!state.matches(entry.states, String.valueOf(i))) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Given a cached ontology, copy it and its imports into a new manager,
+   * with the same IDs, document IRIs, annotations, and imports,
+   * so that the copy can be changed without changing the cache.
+   * The ontology is locked while it is copied,
+   * since OWL API ontologies are not safe to read from many threads.
+   *
+   * @param ontology the cached ontology
+   * @return the copy of the ontology
+   * @throws IOException if the copy cannot be created
+   */
+  private static OWLOntology copy(OWLOntology ontology) throws IOException {
+    OWLOntologyManager source = ontology.getOWLOntologyManager();
+    OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    synchronized(ontology) {
+      try {
+        // create every ontology first, so that the imports are found
+        Map<OWLOntology,OWLOntology> copies =
+          new HashMap<OWLOntology,OWLOntology>();
+        for(OWLOntology original: ontology.getImportsClosure()) {
+          OWLOntology copy = manager.createOntology(original.getOntologyID());
+          manager.setOntologyDocumentIRI(copy,
+              source.getOntologyDocumentIRI(original));
+          copies.put(original, copy);
+        }
+        List<OWLOntologyChange> changes = new ArrayList<OWLOntologyChange>();
+        for(OWLOntology original: copies.keySet()) {
+          OWLOntology copy = copies.get(original);
+          for(OWLImportsDeclaration declaration:
+              original.getImportsDeclarations()) {
+            changes.add(new AddImport(copy, declaration));
+          }
+          for(OWLAnnotation annotation: original.getAnnotations()) {
+            changes.add(new AddOntologyAnnotation(copy, annotation));
+          }
+          manager.addAxioms(copy, original.getAxioms());
+        }
+        manager.applyChanges(changes);
+        return copies.get(ontology);
+      } catch (OWLOntologyCreationException e) {
+        throw new IOException("Could not copy ontology " +
+            ontology.getOntologyID(), e);
+      }
+    }
+  }
+
+  /**
+   * Given a list of paths, record the current state of each file
+   * under its position in the list.
+   * States are recorded before a value is loaded,
+   * so a file that changes while loading is loaded again next time.
+   *
+   * @param paths the paths of the files
+   * @return the recorded states
+   * @throws IOException if a file cannot be read
+   */
+  private static Properties record(List<String> paths) throws IOException {
+    Properties states = new Properties();
+    for(int i = 0; i < paths.size(); i++) {
+      new FileState(paths.get(i)).record(states, String.valueOf(i));
+    }
+    return states;
+  }
+
+}
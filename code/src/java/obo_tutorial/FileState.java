@@ -0,0 +1,194 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Properties;
+
+/**
+ * The state of a file: its absolute path, size, modification time,
+ * and SHA-256 digest, used to tell whether a file has changed
+ * since something was built from it.
+ * States are recorded in a Properties object under a key,
+ * so one properties file can record the state of several inputs.
+ *
+ * The digest is only computed when it is needed:
+ * a file with the same path, size, and modification time
+ * is taken to be unchanged without reading it,
+ * and a file that was only touched is recognized by its digest.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class FileState {
+  /**
+   * The size of the buffer used to read files.
+   */
+  private static final int BUFFER_SIZE = 65536;
+
+  /**
+   * The file.
+   */
+  private final File file;
+
+  /**
+   * The size of the file in bytes.
+   */
+  private final long size;
+
+  /**
+   * The modification time of the file.
+   */
+  private final long modified;
+
+  /**
+   * The hex SHA-256 digest of the file, or null until it is computed.
+   */
+  private String digest = null;
+
+  /**
+   * Read the current state of a file.
+   *
+   * @param path the path of the file
+   */
+  public FileState(String path) {
+    file = new File(path).getAbsoluteFile();
+    size = file.length();
+    modified = file.lastModified();
+  }
+
+  /**
+   * @return the hex SHA-256 digest of the file
+   * @throws IOException if the file cannot be read
+   */
+  public String getDigest() throws IOException {
+    if(digest == null) {
+      digest = digest(file.getPath());
+    }
+    return digest;
+  }
+
+  /**
+   * Given properties and a key,
+   * check whether the state recorded under the key
+   * is the same as the current state.
+   * If only the modification time has changed,
+   * the new time is recorded in the properties,
+   * so the file need not be read again next time.
+   *
+   * @param properties the recorded states
+   * @param key the key the state was recorded under
+   * @return true if the file is unchanged
+   * @throws IOException if the file cannot be read
+   */
+  public boolean matches(Properties properties, String key)
+      throws IOException {
+    if(!file.getPath().equals(properties.getProperty(key + ".path")) ||
+       !String.valueOf(size).equals(properties.getProperty(key + ".size"))) {
+      return false;
+    }
+    if(String.valueOf(modified).equals(
+          properties.getProperty(key + ".modified"))) {
+      return true;
+    }
+    if(getDigest().equals(properties.getProperty(key + ".sha256"))) {
+      properties.setProperty(key + ".modified", String.valueOf(modified));
+      return true;
+    }
+    return false;
+  }
+
+  /**
+   * Given properties and a key,
+   * record the current state under the key.
+   *
+   * @param properties the recorded states
+   * @param key the key to record the state under
+   * @throws IOException if the file cannot be read
+   */
+  public void record(Properties properties, String key) throws IOException {
+    properties.setProperty(key + ".path", file.getPath());
+    properties.setProperty(key + ".size", String.valueOf(size));
+    properties.setProperty(key + ".modified", String.valueOf(modified));
+    properties.setProperty(key + ".sha256", getDigest());
+  }
+
+  /**
+   * Given the path of a file, compute its SHA-256 digest.
+   *
+   * @param path the path of the file
+   * @return the digest as a string of lowercase hex digits
+   * @throws IOException if the file cannot be read
+   */
+  public static String digest(String path) throws IOException {
+    MessageDigest md;
+    try {
+      md = MessageDigest.getInstance("SHA-256");
+    } catch (NoSuchAlgorithmException e) {
+      throw new IOException("SHA-256 is not available", e);
+    }
+    InputStream input = new FileInputStream(path);
+    try {
+      byte[] buffer = new byte[BUFFER_SIZE];
+      int read;
+      while((read = input.read(buffer)) != -1) {
+        md.update(buffer, 0, read);
+      }
+    } finally {
+      input.close();
+    }
+    StringBuilder hex = new StringBuilder();
+    for(byte b: md.digest()) {
+      hex.append(String.format("%02x", b & 0xff));
+    }
+    return hex.toString();
+  }
+
+  /**
+   * Given the path of a properties file, load it.
+   * A missing or unreadable file gives empty properties.
+   *
+   * @param path the path of the properties file
+   * @return the properties
+   */
+  public static Properties loadProperties(String path) {
+    Properties properties = new Properties();
+    if(!new File(path).exists()) {
+      return properties;
+    }
+    try {
+      InputStream input = new FileInputStream(path);
+      try {
+        properties.load(input);
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      System.out.println("Could not read properties file at " + path);
+    }
+    return properties;
+  }
+
+  /**
+   * Given properties and the path of a properties file,
+   * save the properties to the file.
+   *
+   * @param properties the properties to save
+   * @param path the path of the properties file
+   * @throws IOException if the file cannot be written
+   */
+  public static void saveProperties(Properties properties, String path)
+      throws IOException {
+    OutputStream output = new FileOutputStream(path);
+    try {
+      properties.store(output, "obo-tutorial file states");
+    } finally {
+      output.close();
+    }
+  }
+
+}
@@ -0,0 +1,115 @@
+package obo_tutorial;
+
+import java.util.List;
+import java.util.ArrayList;
+
+import org.coode.owlapi.functionalrenderer.OWLFunctionalSyntaxOntologyStorer;
+import org.coode.owlapi.obo.renderer.OBOFlatFileOntologyStorer;
+import org.coode.owlapi.owlxml.renderer.OWLXMLOntologyStorer;
+import org.coode.owlapi.rdf.rdfxml.RDFXMLOntologyStorer;
+import org.coode.owlapi.turtle.TurtleOntologyStorer;
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.AddAxiom;
+import org.semanticweb.owlapi.model.AxiomType;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLClassAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLNaryIndividualAxiom;
+import org.semanticweb.owlapi.model.OWLOntologyChange;
+import org.semanticweb.owlapi.model.OWLPropertyAssertionAxiom;
+import org.semanticweb.owlapi.util.NonMappingOntologyIRIMapper;
+
+import uk.ac.manchester.cs.owl.owlapi.EmptyInMemOWLOntologyFactory;
+import uk.ac.manchester.cs.owl.owlapi.OWLOntologyManagerImpl;
+import uk.ac.manchester.cs.owl.owlapi.ParsableOWLOntologyFactory;
+import uk.ac.manchester.cs.owl.owlapi.mansyntaxrenderer.ManchesterOWLSyntaxOntologyStorer;
+
+/**
+ * An ontology manager that never adds the axioms
+ * that Extractor.cleanOntology would remove:
+ * subAnnotationPropertyOf axioms, and the axioms about named individuals.
+ * Ontologies loaded with this manager are clean when they are parsed,
+ * so the axioms do not have to be indexed and then removed.
+ *
+ * The OWL API parsers add each axiom through the manager,
+ * so the axioms are dropped there.
+ * They are dropped for every ontology in the manager, including imports,
+ * and for every change, not just while parsing.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class FilteringOntologyManager extends OWLOntologyManagerImpl {
+  /**
+   * The version of the serialized form of this class.
+   */
+  private static final long serialVersionUID = 1L;
+
+  /**
+   * Create a manager, set up like OWLManager.createOWLOntologyManager()
+   * for the formats that the tutorial reads and writes.
+   */
+  public FilteringOntologyManager() {
+    super(OWLManager.getOWLDataFactory());
+    addOntologyStorer(new RDFXMLOntologyStorer());
+    addOntologyStorer(new OWLXMLOntologyStorer());
+    addOntologyStorer(new OWLFunctionalSyntaxOntologyStorer());
+    addOntologyStorer(new ManchesterOWLSyntaxOntologyStorer());
+    addOntologyStorer(new OBOFlatFileOntologyStorer());
+    addOntologyStorer(new TurtleOntologyStorer());
+    addIRIMapper(new NonMappingOntologyIRIMapper());
+    addOntologyFactory(new EmptyInMemOWLOntologyFactory());
+    addOntologyFactory(new ParsableOWLOntologyFactory());
+  }
+
+  /**
+   * Apply a list of changes, leaving out the changes
+   * that would add a skipped axiom (see isSkipped).
+   *
+   * @param changes the changes to apply
+   * @return the changes that were applied
+   */
+  public List<OWLOntologyChange> applyChanges(
+      List<? extends OWLOntologyChange> changes) {
+    List<OWLOntologyChange> kept =
+      new ArrayList<OWLOntologyChange>(changes.size());
+    for(OWLOntologyChange change: changes) {
+      if(change instanceof AddAxiom && isSkipped(change.getAxiom())) {
+        continue;
+      }
+      kept.add(change);
+    }
+    return super.applyChanges(kept);
+  }
+
+  /**
+   * Given an axiom, return true if it is a subAnnotationPropertyOf axiom,
+   * or an axiom about a named individual
+   * that Extractor.cleanOntology would remove:
+   * a class assertion or property assertion with a named subject,
+   * or a same or different individuals axiom with a named individual.
+   *
+   * @param axiom the axiom to check
+   * @return true if the axiom should not be added
+   */
+  public static boolean isSkipped(OWLAxiom axiom) {
+    if(axiom.getAxiomType() == AxiomType.SUB_ANNOTATION_PROPERTY_OF) {
+      return true;
+    }
+    if(axiom instanceof OWLClassAssertionAxiom) {
+      return ((OWLClassAssertionAxiom) axiom).getIndividual().isNamed();
+    }
+    if(axiom instanceof OWLPropertyAssertionAxiom) {
+      return ((OWLPropertyAssertionAxiom) axiom).getSubject().isNamed();
+    }
+    if(axiom instanceof OWLNaryIndividualAxiom) {
+      for(OWLIndividual individual:
+          ((OWLNaryIndividualAxiom) axiom).getIndividuals()) {
+        if(individual.isNamed()) {
+          return true;
+        }
+      }
+    }
+    return false;
+  }
+
+}
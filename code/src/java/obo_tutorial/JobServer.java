@@ -0,0 +1,453 @@
+package obo_tutorial;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.PrintStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import org.apache.commons.cli.CommandLine;
+import org.apache.commons.cli.PosixParser;
+
+import org.semanticweb.owlapi.model.OWLOntology;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+
+/**
+ * A long-running process that reads jobs, one command line per line,
+ * and runs them on a pool of threads,
+ * keeping term maps, prefixes, ontologies, and SPARQL pipelines loaded
+ * between jobs (see FileCache),
+ * so that each job does not pay for starting a JVM and parsing its inputs.
+ *
+ * A job is a command and its options,
+ * as for CommandLineInterface, separated by spaces:
+ *
+ *   model --format ntriples data-raw.nt obo-tutorial.owl model.rq data.nt
+ *
+ * The map, convert, model, extract, extract-batch, and merge commands
+ * use the cache; other commands run as usual in the warm JVM.
+ * Extract and merge jobs each work on their own copy
+ * of the cached ontologies, so one job's changes are not seen by others.
+ * The snapshot directory is only used the first time an ontology is loaded,
+ * and merge jobs with --low-memory load their inputs as usual.
+ * Relative paths are resolved against the directory the server runs in,
+ * and paths cannot contain spaces.
+ * When a job finishes, a line is written with its number, its status,
+ * the time it ran, and the time it waited for a thread.
+ * Commands that report their own errors and carry on,
+ * such as a missing input file, still finish as "done".
+ *
+ * Model jobs share the cached ontology graph,
+ * so their SPARQL must not change the "tutorial:ontology" graph.
+ * Model jobs with a persistent store run one at a time for each store.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class JobServer {
+  /**
+   * The inputs that are kept loaded between jobs.
+   */
+  private final FileCache cache = new FileCache();
+
+  /**
+   * The threads that jobs run on.
+   */
+  private final ExecutorService pool;
+
+  /**
+   * A lock for each persistent store directory.
+   */
+  private final Map<String,Object> storeLocks = new HashMap<String,Object>();
+
+  /**
+   * The number of jobs submitted.
+   */
+  private int jobs = 0;
+
+  /**
+   * Create a server that runs jobs on a number of threads.
+   *
+   * @param threads the number of jobs to run at once
+   */
+  public JobServer(int threads) {
+    pool = Executors.newFixedThreadPool(Math.max(threads, 1));
+  }
+
+  /**
+   * Given a list of arguments and a number of threads,
+   * start a server and serve jobs until the input ends.
+   * With no arguments, jobs are read from standard input,
+   * and results are written to standard output.
+   * With one argument, it is the number of a port on localhost
+   * to accept connections on, and each connection sends jobs
+   * and receives the results of its jobs.
+   *
+   * @param args an optional port number
+   * @param threads the number of jobs to run at once
+   * @throws IOException if the jobs cannot be read
+   */
+  public static void serve(List<String> args, int threads)
+      throws IOException {
+    JobServer server = new JobServer(threads);
+    try {
+      if(args.size() == 0) {
+        server.serve(System.in, System.out);
+      } else {
+        server.listen(Integer.parseInt(args.get(0)));
+      }
+    } finally {
+      server.shutdown();
+    }
+  }
+
+  /**
+   * Given a port number, accept connections on localhost,
+   * and serve the jobs of each connection on its own thread
+   * (see serve(InputStream, PrintStream)).
+   * This method does not return.
+   *
+   * @param port the port to listen on
+   * @throws IOException if the port cannot be opened
+   */
+  public void listen(int port) throws IOException {
+    ServerSocket socket = new ServerSocket(port, 50,
+        InetAddress.getByName(null));
+    System.out.println("Listening for jobs on localhost port " + port);
+    try {
+      while(true) {
+        final Socket connection = socket.accept();
+        Thread thread = new Thread(new Runnable() {
+          public void run() {
+            try {
+              serve(connection.getInputStream(),
+                  new PrintStream(connection.getOutputStream(), true,
+                    "UTF-8"));
+            } catch (IOException e) {
+              System.out.println("Could not serve connection: " +
+                  e.getMessage());
+            } finally {
+              try {
+                connection.close();
+              } catch (IOException e) {
+                // nothing left to do
+              }
+            }
+          }
+        });
+        thread.setDaemon(true);
+        thread.start();
+      }
+    } finally {
+      socket.close();
+    }
+  }
+
+  /**
+   * Given a stream of jobs, one per line, and a stream for results,
+   * submit each job as it is read,
+   * write a result line as each job finishes,
+   * and return when the input has ended and all its jobs have finished.
+   * Blank lines and lines starting with "#" are skipped.
+   *
+   * @param input the stream to read jobs from
+   * @param output the stream to write results to
+   * @throws IOException if the jobs cannot be read
+   */
+  public void serve(InputStream input, PrintStream output)
+      throws IOException {
+    BufferedReader reader =
+      new BufferedReader(new InputStreamReader(input, "UTF-8"));
+    List<Future<String>> pending = new ArrayList<Future<String>>();
+    String line;
+    while((line = reader.readLine()) != null) {
+      line = line.trim();
+      if(line.equals("") || line.startsWith("#")) {
+        continue;
+      }
+      pending.add(submit(line, output));
+      // forget finished jobs, so a long stream of jobs does not keep them all
+      Iterator<Future<String>> results = pending.iterator();
+      while(results.hasNext()) {
+        Future<String> result = results.next();
+        if(result.isDone()) {
+          await(result);
+          results.remove();
+        }
+      }
+    }
+
+    for(Future<String> result: pending) {
+      await(result);
+    }
+  }
+
+  /**
+   * Given a job and a stream for results,
+   * run the job on the pool,
+   * and write its result line to the stream when it finishes.
+   *
+   * @param line the command line of the job
+   * @param output the stream to write the result to
+   * @return the result line, when the job has finished
+   */
+  public Future<String> submit(final String line, final PrintStream output) {
+    final int job = nextJob();
+    final long submitted = System.nanoTime();
+    return pool.submit(new Callable<String>() {
+      public String call() {
+        long started = System.nanoTime();
+        String error = null;
+        try {
+          run(line);
+        } catch (Exception e) {
+          error = e.toString();
+        }
+        long finished = System.nanoTime();
+
+        String status = "done";
+        if(error != null) {
+          status = "failed";
+        }
+        String result = String.format("job %d %s in %d ms, waited %d ms: %s",
+            job, status, (finished - started) / 1000000,
+            (started - submitted) / 1000000, line);
+        if(error != null) {
+          result = result + "\n  " + error;
+        }
+        respond(output, result);
+        return result;
+      }
+    });
+  }
+
+  /**
+   * Given the command line of a job, run it,
+   * loading its inputs from the cache.
+   *
+   * @param line the command line of the job
+   * @throws Exception if the job is not valid, or fails
+   */
+  public void run(String line) throws Exception {
+    CommandLine options = new PosixParser().parse(
+        CommandLineInterface.getOptions(), line.split("\\s+"));
+    List<String> arguments =
+      new ArrayList<String>(Arrays.asList(options.getArgs()));
+    if(arguments.size() == 0) {
+      throw new IllegalArgumentException("No command provided");
+    }
+    String command = arguments.remove(0);
+    int threads = Integer.parseInt(options.getOptionValue("threads", "1"));
+    String format =
+      options.getOptionValue("format", RDFOutput.TURTLE_PRETTY);
+    RDFOutput.checkFormat(format);
+    ModuleType moduleType = LocalityIndex.getModuleType(
+        options.getOptionValue("module-type", "STAR"));
+    long timeout = Long.parseLong(options.getOptionValue("reason-timeout",
+          Classifier.DEFAULT_TIMEOUT));
+    long memory = Long.parseLong(options.getOptionValue("reason-memory", "0"));
+
+    if(command.equals("map")) {
+      checkArguments(command, arguments, 3);
+      TermMapper.map(cache.getTermMap(arguments.get(0)),
+          arguments.get(1), arguments.get(2), threads,
+          DateNormalizer.parseColumns(
+            options.getOptionValues("date-pattern")));
+    } else if(command.equals("convert")) {
+      checkArguments(command, arguments, 3);
+      TripleConverter.convert(cache.getPrefixMap(arguments.get(0)),
+          arguments.get(1), arguments.get(2), format, threads,
+          options.hasOption("keep-shards"));
+    } else if(command.equals("model")) {
+      checkArguments(command, arguments, 4);
+      String storePath = options.getOptionValue("store");
+      int batchSize =
+        Integer.parseInt(options.getOptionValue("batch-size", "0"));
+      String indexPath = options.getOptionValue("ontology-index");
+      if(storePath == null) {
+        Modeller.convert(arguments.get(0),
+            cache.getOntology(arguments.get(1), indexPath),
+            cache.getPipeline(arguments.get(2)),
+            arguments.get(3), format, batchSize);
+      } else {
+        synchronized(getStoreLock(storePath)) {
+          Modeller.convert(arguments.get(0), arguments.get(1),
+              arguments.get(2), arguments.get(3), format, storePath,
+              batchSize, indexPath);
+        }
+      }
+    } else if(command.equals("extract")) {
+      checkArguments(command, arguments, 4);
+      OWLOntology source = cache.getSource(arguments.get(0),
+          options.getOptionValue("snapshots"),
+          options.hasOption("skip-individuals"));
+      if(!Extractor.extract(source, arguments.get(0), arguments.get(1),
+            arguments.get(2), arguments.get(3),
+            options.hasOption("incremental"), moduleType)) {
+        throw new IOException("Could not extract module to " +
+            arguments.get(2));
+      }
+      if(options.hasOption("reason") && !Classifier.classifyOutput(arguments,
+            options.getOptionValue("reasoner-cache"), timeout, memory)) {
+        throw new IOException("Could not classify " + arguments.get(2));
+      }
+    } else if(command.equals("extract-batch")) {
+      checkArguments(command, arguments, 4);
+      List<String[]> modules = Extractor.getModules(arguments);
+      if(modules == null || !Extractor.extractBatch(
+            cache.getSource(arguments.get(0),
+              options.getOptionValue("snapshots"),
+              options.hasOption("skip-individuals")),
+            modules, threads, moduleType)) {
+        throw new IOException("Could not extract every module from " +
+            arguments.get(0));
+      }
+    } else if(command.equals("compile-terms")) {
+      checkArguments(command, arguments, 2);
+      TermIndex.compile(arguments);
+    } else if(command.equals("merge")) {
+      checkArguments(command, arguments, 3);
+      // merge removes the output path and IRI from its arguments
+      List<String> outputs = new ArrayList<String>(arguments);
+      OWLOntology merged;
+      if(options.hasOption("low-memory")) {
+        merged = Merger.merge(arguments, threads, true,
+            options.getOptionValue("snapshots"));
+      } else {
+        List<String> paths = arguments.subList(0, arguments.size() - 2);
+        Set<OWLOntology> ontologies = new HashSet<OWLOntology>();
+        for(String path: paths) {
+          ontologies.addAll(cache.getInput(path, paths,
+                options.getOptionValue("snapshots"))
+              .getOWLOntologyManager().getOntologies());
+        }
+        merged = Merger.merge(ontologies, outputs.get(outputs.size() - 2),
+            outputs.get(outputs.size() - 1));
+      }
+      if(merged == null) {
+        throw new IOException("Could not merge ontologies to " +
+            outputs.get(outputs.size() - 2));
+      }
+      if(options.hasOption("reason") && !Classifier.classifyOutput(outputs,
+            options.getOptionValue("reasoner-cache"), timeout, memory)) {
+        throw new IOException("Could not classify " +
+            outputs.get(outputs.size() - 2));
+      }
+    } else if(command.equals("reason")) {
+      checkArguments(command, arguments, 3);
+      if(!Classifier.classify(arguments, options.getOptionValue("snapshots"),
+            options.getOptionValue("reasoner-cache"), timeout, memory)) {
+        throw new IOException("Could not classify " + arguments.get(0));
+      }
+    } else {
+      throw new IllegalArgumentException("Unknown command: " + command);
+    }
+  }
+
+  /**
+   * Stop accepting jobs, and wait for running jobs to finish.
+   */
+  public void shutdown() {
+    pool.shutdown();
+  }
+
+  /**
+   * @return the cache of inputs shared by the jobs
+   */
+  public FileCache getCache() {
+    return cache;
+  }
+
+  /**
+   * @return the number of the next job
+   */
+  private synchronized int nextJob() {
+    jobs = jobs + 1;
+    return jobs;
+  }
+
+  /**
+   * Given the directory of a persistent store,
+   * return the lock that jobs using it must hold.
+   *
+   * @param storePath the directory of the store
+   * @return the lock for the store
+   */
+  private synchronized Object getStoreLock(String storePath) {
+    String key = new File(storePath).getAbsolutePath();
+    Object lock = storeLocks.get(key);
+    if(lock == null) {
+      lock = new Object();
+      storeLocks.put(key, lock);
+    }
+    return lock;
+  }
+
+  /**
+   * Given a command and its arguments,
+   * check that there are enough arguments.
+   *
+   * @param command the name of the command
+   * @param arguments the arguments of the command
+   * @param count the number of arguments required
+   * @throws IllegalArgumentException if there are too few arguments
+   */
+  private static void checkArguments(String command, List<String> arguments,
+      int count) {
+    if(arguments.size() < count) {
+      throw new IllegalArgumentException("The " + command + " command needs " +
+          count + " arguments, got " + arguments.size());
+    }
+  }
+
+  /**
+   * Given the result of a job, wait for the job to finish.
+   *
+   * @param result the result of the job
+   * @throws IOException if interrupted, or if the job could not run
+   */
+  private static void await(Future<String> result) throws IOException {
+    try {
+      result.get();
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted while waiting for jobs", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not run job", e.getCause());
+    }
+  }
+
+  /**
+   * Given a stream and a result line, write the line to the stream,
+   * and also to standard output if the stream is a connection.
+   *
+   * @param output the stream to write to
+   * @param result the result line
+   */
+  private static void respond(PrintStream output, String result) {
+    synchronized(output) {
+      output.println(result);
+      output.flush();
+    }
+    if(output != System.out) {
+      System.out.println(result);
+    }
+  }
+
+}
@@ -0,0 +1,389 @@
+package obo_tutorial;
+
+import java.util.List;
+import java.util.ArrayList;
+import java.util.LinkedList;
+import java.util.BitSet;
+import java.util.Map;
+import java.util.HashMap;
+import java.util.Set;
+import java.util.HashSet;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLAnnotationAssertionAxiom;
+import org.semanticweb.owlapi.model.OWLAxiom;
+import org.semanticweb.owlapi.model.OWLDeclarationAxiom;
+import org.semanticweb.owlapi.model.OWLEntity;
+import org.semanticweb.owlapi.model.OWLIndividual;
+import org.semanticweb.owlapi.model.OWLDifferentIndividualsAxiom;
+import org.semanticweb.owlapi.model.OWLNaryIndividualAxiom;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLSameIndividualAxiom;
+
+import com.clarkparsia.owlapi.modularity.locality.LocalityClass;
+import com.clarkparsia.owlapi.modularity.locality.SyntacticLocalityEvaluator;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+
+/**
+ * An index of the axioms of a source ontology for extracting
+ * syntactic locality-based modules,
+ * built once and then used for any number of extractions.
+ * The modules are the same as the SyntacticLocalityModuleExtractor
+ * of the OWL API would extract from the same axioms.
+ *
+ * The extractor checks every axiom for locality,
+ * again and again until the module stops growing.
+ * The locality of an axiom only depends on the entities
+ * of its signature that are in the module signature,
+ * so this index keeps the axioms that use each entity,
+ * and when an entity is added to the module signature
+ * only the axioms that use it are checked again.
+ * The axioms that are not local even for an empty signature
+ * are found once for each locality class, and kept.
+ * The declarations, annotations, and individual axioms
+ * that are added to a module for its signature are also indexed.
+ *
+ * The index does not change after it is built,
+ * so it can be shared by threads.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class LocalityIndex {
+  /**
+   * The names of the module types that can be extracted.
+   */
+  public static final String MODULE_TYPES = "BOT, TOP, STAR";
+
+  /**
+   * The axioms, numbered by their position.
+   */
+  private final OWLAxiom[] axioms;
+
+  /**
+   * The numbers of the axioms that use each entity.
+   */
+  private final Map<OWLEntity,int[]> entityAxioms =
+    new HashMap<OWLEntity,int[]>();
+
+  /**
+   * The declaration axioms of each entity.
+   */
+  private final Map<OWLEntity,Set<OWLAxiom>> declarations =
+    new HashMap<OWLEntity,Set<OWLAxiom>>();
+
+  /**
+   * The annotation assertion axioms of each subject IRI.
+   */
+  private final Map<IRI,Set<OWLAxiom>> annotations =
+    new HashMap<IRI,Set<OWLAxiom>>();
+
+  /**
+   * The same and different individuals axioms of each individual.
+   */
+  private final Map<OWLEntity,Set<OWLAxiom>> individualAxioms =
+    new HashMap<OWLEntity,Set<OWLAxiom>>();
+
+  /**
+   * The numbers of the axioms that are not local for an empty signature,
+   * for each locality class, found the first time they are used.
+   */
+  private final Map<LocalityClass,int[]> globalAxioms =
+    new HashMap<LocalityClass,int[]>();
+
+  /**
+   * Given a set of axioms, index them for module extraction.
+   *
+   * @param axioms the axioms to extract modules from
+   */
+  public LocalityIndex(Set<OWLAxiom> axioms) {
+    this.axioms = axioms.toArray(new OWLAxiom[axioms.size()]);
+    Map<OWLEntity,List<Integer>> uses = new HashMap<OWLEntity,List<Integer>>();
+    for(int i = 0; i < this.axioms.length; i++) {
+      OWLAxiom axiom = this.axioms[i];
+      for(OWLEntity entity: axiom.getSignature()) {
+        List<Integer> found = uses.get(entity);
+        if(found == null) {
+          found = new ArrayList<Integer>(2);
+          uses.put(entity, found);
+        }
+        found.add(i);
+      }
+
+      if(axiom instanceof OWLDeclarationAxiom) {
+        add(declarations, ((OWLDeclarationAxiom) axiom).getEntity(), axiom);
+      } else if(axiom instanceof OWLAnnotationAssertionAxiom) {
+        Object subject = ((OWLAnnotationAssertionAxiom) axiom).getSubject();
+        if(subject instanceof IRI) {
+          add(annotations, (IRI) subject, axiom);
+        }
+      } else if(axiom instanceof OWLSameIndividualAxiom ||
+          axiom instanceof OWLDifferentIndividualsAxiom) {
+        for(OWLIndividual individual:
+            ((OWLNaryIndividualAxiom) axiom).getIndividuals()) {
+          if(individual.isNamed()) {
+            add(individualAxioms, individual.asOWLNamedIndividual(), axiom);
+          }
+        }
+      }
+    }
+
+    for(Map.Entry<OWLEntity,List<Integer>> entry: uses.entrySet()) {
+      List<Integer> found = entry.getValue();
+      int[] numbers = new int[found.size()];
+      for(int i = 0; i < numbers.length; i++) {
+        numbers[i] = found.get(i);
+      }
+      entityAxioms.put(entry.getKey(), numbers);
+    }
+  }
+
+  /**
+   * Given a source ontology and a set of axioms to leave out,
+   * index the axioms of the source ontology and its imports.
+   *
+   * @param source the source ontology for the extraction
+   * @param excluded the axioms to leave out, which may be empty
+   * @return the new index
+   */
+  public static LocalityIndex create(OWLOntology source,
+      Set<OWLAxiom> excluded) {
+    Set<OWLAxiom> axioms = new HashSet<OWLAxiom>();
+    for(OWLOntology ontology: source.getImportsClosure()) {
+      axioms.addAll(ontology.getAxioms());
+    }
+    axioms.removeAll(excluded);
+    return new LocalityIndex(axioms);
+  }
+
+  /**
+   * Given the name of a module type, in any case, return the type.
+   *
+   * @param name BOT, TOP, or STAR
+   * @return the module type
+   * @throws IllegalArgumentException if the name is not one of these
+   */
+  public static ModuleType getModuleType(String name) {
+    String upper = name.toUpperCase();
+    if(upper.equals("BOT")) {
+      return ModuleType.BOT;
+    } else if(upper.equals("TOP")) {
+      return ModuleType.TOP;
+    } else if(upper.equals("STAR")) {
+      return ModuleType.STAR;
+    }
+    throw new IllegalArgumentException("Unknown module type '" + name +
+        "', use one of: " + MODULE_TYPES);
+  }
+
+  /**
+   * Given a set of seed entities, a module type, and an IRI,
+   * extract the module into a new ontology with that IRI,
+   * in a new manager.
+   *
+   * @param seeds the entities to extract
+   * @param moduleType the type of module to extract
+   * @param iri the IRI for the new ontology
+   * @return the new ontology
+   * @throws OWLOntologyCreationException if the ontology cannot be created
+   */
+  public OWLOntology extractAsOntology(Set<OWLEntity> seeds,
+      ModuleType moduleType, IRI iri) throws OWLOntologyCreationException {
+    OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    return manager.createOntology(extract(seeds, moduleType), iri);
+  }
+
+  /**
+   * Given a set of seed entities and a module type,
+   * return the axioms of the module:
+   * the axioms that are not local for the seeds and the module signature,
+   * and the declarations and annotations of the entities
+   * in that signature.
+   * A STAR module is extracted by alternating BOT and TOP extractions
+   * until the module stops changing.
+   *
+   * @param seeds the entities to extract
+   * @param moduleType BOT, TOP, or STAR
+   * @return the axioms of the module
+   */
+  public Set<OWLAxiom> extract(Set<OWLEntity> seeds, ModuleType moduleType) {
+    BitSet module = new BitSet(axioms.length);
+    module.set(0, axioms.length);
+    Set<OWLEntity> signature = new HashSet<OWLEntity>(seeds);
+    if(moduleType == ModuleType.BOT) {
+      module = extractLogicalAxioms(module, signature,
+          LocalityClass.BOTTOM_BOTTOM);
+    } else if(moduleType == ModuleType.TOP) {
+      module = extractLogicalAxioms(module, signature, LocalityClass.TOP_TOP);
+    } else if(moduleType == ModuleType.STAR) {
+      LocalityClass localityClass = LocalityClass.BOTTOM_BOTTOM;
+      boolean first = true;
+      while(true) {
+        int size = module.cardinality();
+        signature = new HashSet<OWLEntity>(seeds);
+        module = extractLogicalAxioms(module, signature, localityClass);
+        if(module.cardinality() == size && !first) {
+          break;
+        }
+        first = false;
+        if(localityClass == LocalityClass.BOTTOM_BOTTOM) {
+          localityClass = LocalityClass.TOP_TOP;
+        } else {
+          localityClass = LocalityClass.BOTTOM_BOTTOM;
+        }
+      }
+    } else {
+      throw new IllegalArgumentException("Unsupported module type: " +
+          moduleType);
+    }
+    return enrich(module, signature);
+  }
+
+  /**
+   * Given the numbers of the candidate axioms, a signature,
+   * and a locality class,
+   * return the numbers of the candidate axioms that are not local
+   * for the signature, adding the signature of each axiom found
+   * to the signature, until no more are found.
+   *
+   * @param candidates the numbers of the axioms to choose from
+   * @param signature the seed signature, which is extended
+   * @param localityClass the locality class to check
+   * @return the numbers of the axioms in the module
+   */
+  private BitSet extractLogicalAxioms(BitSet candidates,
+      Set<OWLEntity> signature, LocalityClass localityClass) {
+    SyntacticLocalityEvaluator evaluator =
+      new SyntacticLocalityEvaluator(localityClass);
+    BitSet module = new BitSet(axioms.length);
+    LinkedList<OWLEntity> added = new LinkedList<OWLEntity>(signature);
+    for(int i: getGlobalAxioms(localityClass)) {
+      if(candidates.get(i) && !module.get(i)) {
+        addAxiom(i, module, signature, added);
+      }
+    }
+    while(!added.isEmpty()) {
+      int[] found = entityAxioms.get(added.removeFirst());
+      if(found == null) {
+        continue;
+      }
+      for(int i: found) {
+        if(candidates.get(i) && !module.get(i) &&
+           !evaluator.isLocal(axioms[i], signature)) {
+          addAxiom(i, module, signature, added);
+        }
+      }
+    }
+    return module;
+  }
+
+  /**
+   * Given the number of an axiom, a module, its signature,
+   * and a list of entities still to be checked,
+   * add the axiom to the module, and any new entities it uses
+   * to the signature and the list.
+   *
+   * @param i the number of the axiom
+   * @param module the numbers of the axioms in the module
+   * @param signature the module signature
+   * @param added the entities whose axioms must be checked
+   */
+  private void addAxiom(int i, BitSet module, Set<OWLEntity> signature,
+      List<OWLEntity> added) {
+    module.set(i);
+    for(OWLEntity entity: axioms[i].getSignature()) {
+      if(signature.add(entity)) {
+        added.add(entity);
+      }
+    }
+  }
+
+  /**
+   * Given a locality class, return the numbers of the axioms
+   * that are not local for an empty signature,
+   * and so are not local for any signature.
+   *
+   * @param localityClass the locality class to check
+   * @return the numbers of the axioms
+   */
+  private synchronized int[] getGlobalAxioms(LocalityClass localityClass) {
+    int[] global = globalAxioms.get(localityClass);
+    if(global == null) {
+      SyntacticLocalityEvaluator evaluator =
+        new SyntacticLocalityEvaluator(localityClass);
+      Set<OWLEntity> empty = new HashSet<OWLEntity>();
+      List<Integer> found = new ArrayList<Integer>();
+      for(int i = 0; i < axioms.length; i++) {
+        if(!evaluator.isLocal(axioms[i], empty)) {
+          found.add(i);
+        }
+      }
+      global = new int[found.size()];
+      for(int i = 0; i < global.length; i++) {
+        global[i] = found.get(i);
+      }
+      globalAxioms.put(localityClass, global);
+    }
+    return global;
+  }
+
+  /**
+   * Given the numbers of the axioms of a module and its signature,
+   * return the axioms with the declarations and annotation assertions
+   * of each entity in the signature,
+   * and the same and different individuals axioms of each individual.
+   *
+   * @param module the numbers of the axioms in the module
+   * @param signature the module signature
+   * @return the axioms of the module
+   */
+  private Set<OWLAxiom> enrich(BitSet module, Set<OWLEntity> signature) {
+    Set<OWLAxiom> result = new HashSet<OWLAxiom>();
+    for(int i = module.nextSetBit(0); i >= 0; i = module.nextSetBit(i + 1)) {
+      result.add(axioms[i]);
+    }
+    for(OWLEntity entity: signature) {
+      addAll(result, declarations.get(entity));
+      addAll(result, annotations.get(entity.getIRI()));
+      if(entity instanceof OWLIndividual) {
+        addAll(result, individualAxioms.get(entity));
+      }
+    }
+    return result;
+  }
+
+  /**
+   * Given a map from keys to sets of axioms, a key, and an axiom,
+   * add the axiom to the set for the key.
+   *
+   * @param map the map to add to
+   * @param key the key
+   * @param axiom the axiom to add
+   */
+  private static <K> void add(Map<K,Set<OWLAxiom>> map, K key,
+      OWLAxiom axiom) {
+    Set<OWLAxiom> found = map.get(key);
+    if(found == null) {
+      found = new HashSet<OWLAxiom>(2);
+      map.put(key, found);
+    }
+    found.add(axiom);
+  }
+
+  /**
+   * Given a set of axioms and another set that may be null,
+   * add the axioms of the other set to the first.
+   *
+   * @param result the set to add to
+   * @param axioms the axioms to add, or null
+   */
+  private static void addAll(Set<OWLAxiom> result, Set<OWLAxiom> axioms) {
+    if(axioms != null) {
+      result.addAll(axioms);
+    }
+  }
+
+}
@@ -4,12 +4,24 @@ import java.io.File;
 import java.io.IOException;
 import java.util.Arrays;
 import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.LinkedHashMap;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import org.semanticweb.owlapi.apibinding.OWLManager;
 import org.semanticweb.owlapi.model.IRI;
 import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyID;
 import org.semanticweb.owlapi.model.OWLOntologyManager;
 import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologySetProvider;
 import org.semanticweb.owlapi.util.OWLOntologyMerger;
 import org.semanticweb.owlapi.util.AutoIRIMapper;
 
@@ -47,9 +59,35 @@ public class Merger {
    * @return the merged ontology
    */
   public static OWLOntology merge(List<String> args) {
+    return merge(args, 1, false, null);
+  }
+
+  /**
+   * Given a list of input ontology file paths,
+   * an output file path, an output ontology IRI,
+   * a number of threads, whether to save memory,
+   * and an optional snapshot directory,
+   * merge the inputs into the output with that IRI and write it.
+   *
+   * @param args At least three strings:
+   *   - one or more paths to the input ontology files
+   *   - the path of the merged ontology (output) file
+   *   - the IRI of the merged ontology
+   * @param threads the number of threads to parse the inputs with
+   * @param lowMemory true to load and copy one input at a time
+   *   (see mergeIncrementally), ignoring the number of threads
+   * @param snapshotDir the directory of input ontology snapshots
+   *   (see OntologySnapshot), or null
+   * @return the merged ontology
+   */
+  public static OWLOntology merge(List<String> args, int threads,
+      boolean lowMemory, String snapshotDir) {
     String outputIRI = args.remove(args.size() - 1);
     String outputPath = args.remove(args.size() - 1);
-    return merge(args, outputPath, outputIRI);
+    if(lowMemory) {
+      return mergeIncrementally(args, outputPath, outputIRI, snapshotDir);
+    }
+    return merge(args, outputPath, outputIRI, threads, snapshotDir);
   }
 
   /**
@@ -64,27 +102,255 @@ public class Merger {
    */
   public static OWLOntology merge(List<String> paths,
       String outputPathString, String outputIRIString) {
+    return merge(paths, outputPathString, outputIRIString, 1, null);
+  }
+
+  /**
+   * Given a list of input ontology file paths,
+   * an output file path, an output ontology IRI,
+   * a number of threads, and an optional snapshot directory,
+   * parse the inputs on a pool of threads (see load),
+   * merge them into the output with that IRI and write it.
+   * The time taken to parse, merge, and save is printed.
+   * Inputs that cannot be loaded are reported and skipped,
+   * and the others are still merged and saved.
+   *
+   * @param paths a list of paths to input ontologies
+   * @param outputPathString the path to save the resulting ontology file
+   * @param outputIRIString the IRI string of the resulting ontology
+   * @param threads the number of threads to parse the inputs with
+   * @param snapshotDir the directory of input ontology snapshots
+   *   (see OntologySnapshot), or null
+   * @return the merged ontology, or null if an input could not be loaded,
+   *   or the output could not be merged or saved
+   */
+  public static OWLOntology merge(List<String> paths,
+      String outputPathString, String outputIRIString, int threads,
+      String snapshotDir) {
+    long start = System.nanoTime();
+    Set<OWLOntology> ontologies = new HashSet<OWLOntology>();
+    List<OWLOntologyManager> managers = load(paths, threads, snapshotDir);
+    for(OWLOntologyManager manager: managers) {
+      ontologies.addAll(manager.getOntologies());
+    }
+    System.out.println(String.format("Parsed %d ontologies in %d ms",
+          ontologies.size(), (System.nanoTime() - start) / 1000000));
+
+    OWLOntology merged = merge(ontologies, outputPathString, outputIRIString);
+    if(managers.size() < paths.size()) {
+      return null;
+    }
+    return merged;
+  }
+
+  /**
+   * Given a set of ontologies that are already loaded,
+   * an output file path, and an output ontology IRI,
+   * merge the ontologies into a new ontology with that IRI
+   * in a new manager, and write it.
+   * The ontologies are only read.
+   *
+   * @param ontologies the ontologies to merge, with their imports
+   * @param outputPathString the path to save the resulting ontology file
+   * @param outputIRIString the IRI string of the resulting ontology
+   * @return the merged ontology,
+   *   or null if it could not be merged or saved
+   */
+  public static OWLOntology merge(final Set<OWLOntology> ontologies,
+      String outputPathString, String outputIRIString) {
+    return merge(new OWLOntologySetProvider() {
+      public Set<OWLOntology> getOntologies() {
+        return ontologies;
+      }
+    }, OWLManager.createOWLOntologyManager(),
+        IRI.create(new File(outputPathString)), IRI.create(outputIRIString));
+  }
+
+  /**
+   * Given a list of input ontology file paths, a number of threads,
+   * and an optional snapshot directory,
+   * load each input with its imports into its own manager,
+   * using a pool of threads,
+   * from a snapshot of each file if there is one (see OntologySnapshot).
+   * Imports are looked for in the directories of all the inputs,
+   * and each directory is scanned only once.
+   * An import that is shared by several inputs is parsed once for each.
+   * Inputs that cannot be loaded are reported and skipped.
+   *
+   * @param paths a list of paths to input ontologies
+   * @param threads the number of threads to parse the inputs with
+   * @param snapshotDir the directory of input ontology snapshots
+   *   (see OntologySnapshot), or null
+   * @return a manager for each input that was loaded, in order
+   */
+  public static List<OWLOntologyManager> load(List<String> paths,
+      int threads, final String snapshotDir) {
+    List<OWLOntologyManager> managers = new ArrayList<OWLOntologyManager>();
+    final List<AutoIRIMapper> mappers = getIRIMappers(paths);
+
+    // load each ontology into its own manager
+    ExecutorService pool = Executors.newFixedThreadPool(Math.max(threads, 1));
+    try {
+      List<Future<OWLOntologyManager>> results =
+        new ArrayList<Future<OWLOntologyManager>>();
+      for(final String path: paths) {
+        results.add(pool.submit(new Callable<OWLOntologyManager>() {
+          public OWLOntologyManager call() throws Exception {
+            return loadOntology(path, mappers, snapshotDir);
+          }
+        }));
+      }
+      for(int i = 0; i < paths.size(); i++) {
+        try {
+          managers.add(results.get(i).get());
+        } catch (ExecutionException e) {
+          System.out.println("ERROR: Could not load ontology at: " +
+              paths.get(i));
+          System.out.println(e.getCause().getMessage());
+          e.getCause().printStackTrace();
+        }
+      }
+    } catch (InterruptedException e) {
+      System.out.println("ERROR: Interrupted while loading ontologies");
+    } finally {
+      pool.shutdownNow();
+    }
+
+    return managers;
+  }
+
+  /**
+   * Given a list of input ontology file paths,
+   * scan the directory of each file for ontologies it can import,
+   * once for each distinct directory.
+   * Directories that cannot be found are reported and skipped.
+   *
+   * @param paths a list of paths to input ontologies
+   * @return an IRI mapper for each directory
+   */
+  public static List<AutoIRIMapper> getIRIMappers(List<String> paths) {
+    Map<File,AutoIRIMapper> mappers = new LinkedHashMap<File,AutoIRIMapper>();
+    for(String path: paths) {
+      try {
+        File parent = new File(path).getCanonicalFile().getParentFile();
+        if(!mappers.containsKey(parent)) {
+          AutoIRIMapper mapper = new AutoIRIMapper(parent, false);
+          mapper.getOntologyIRIs();
+          mappers.put(parent, mapper);
+        }
+      } catch (IOException e) {
+        System.out.println("ERROR: Could not find directory of: " + path);
+        System.out.println(e.getMessage());
+      }
+    }
+    return new ArrayList<AutoIRIMapper>(mappers.values());
+  }
+
+  /**
+   * Given the path of an ontology file, a list of IRI mappers,
+   * and an optional snapshot directory,
+   * load the ontology with its imports into a new manager,
+   * from a snapshot of the file if there is one (see OntologySnapshot).
+   * The mappers must already have scanned their directories
+   * (see getIRIMappers), so that they can be shared between threads.
+   *
+   * @param path the path of the ontology file
+   * @param mappers the IRI mappers to find imports with
+   * @param snapshotDir the directory of ontology snapshots, or null
+   * @return a manager holding the ontology and its imports
+   * @throws OWLOntologyCreationException if the ontology cannot be loaded
+   */
+  public static OWLOntologyManager loadOntology(String path,
+      List<AutoIRIMapper> mappers, String snapshotDir)
+      throws OWLOntologyCreationException {
     OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    for(AutoIRIMapper mapper: mappers) {
+      manager.addIRIMapper(mapper);
+    }
+    OntologySnapshot.load(manager, path, snapshotDir);
+    return manager;
+  }
+
+  /**
+   * Given a list of input ontology file paths,
+   * an output file path, an output ontology IRI,
+   * and an optional snapshot directory,
+   * load one input at a time with its imports,
+   * copy its axioms into the output ontology,
+   * and unload it before loading the next input,
+   * then write the output.
+   * Peak memory is about the size of the merged ontology,
+   * rather than the size of all the inputs and the merged ontology.
+   * Adding an axiom that is already in the output does nothing,
+   * and an import shared by several inputs is copied only once,
+   * but it is parsed once for each of them.
+   * The time taken to parse, merge, and save is printed.
+   *
+   * @param paths a list of paths to input ontologies
+   * @param outputPathString the path to save the resulting ontology file
+   * @param outputIRIString the IRI string of the resulting ontology
+   * @param snapshotDir the directory of input ontology snapshots
+   *   (see OntologySnapshot), or null
+   * @return the merged ontology, or null if an input could not be loaded,
+   *   or the output could not be created or saved
+   */
+  public static OWLOntology mergeIncrementally(List<String> paths,
+      String outputPathString, String outputIRIString, String snapshotDir) {
+    IRI outputPath = IRI.create(new File(outputPathString));
+    IRI outputIRI = IRI.create(outputIRIString);
+    List<AutoIRIMapper> mappers = getIRIMappers(paths);
 
-    // load ontologies into manager
-    // checks the directory of the file for imports
+    OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+    OWLOntology merged = null;
+    try {
+      merged = manager.createOntology(outputIRI);
+    } catch (OWLOntologyCreationException e) {
+      System.out.println("ERROR: Could not merge ontologyies");
+      System.out.println(e.getMessage());
+      return merged;
+    }
+
+    Set<OWLOntologyID> copied = new HashSet<OWLOntologyID>();
+    boolean failed = false;
+    long parsing = 0;
+    long merging = 0;
     for(String path: paths) {
+      // load the input and its imports
+      long start = System.nanoTime();
+      OWLOntologyManager source = null;
       try {
-        File file = new File(path);
-        File parent = file.getCanonicalFile().getParentFile();
-        manager.addIRIMapper(new AutoIRIMapper(parent, false));
-        manager.loadOntologyFromOntologyDocument(file);
+        source = loadOntology(path, mappers, snapshotDir);
       } catch (Exception e) {
         System.out.println("ERROR: Could not load ontology at: " + path);
         System.out.println(e.getMessage());
         e.printStackTrace();
+        failed = true;
+        continue;
       }
-    }
+      long loaded = System.nanoTime();
+      parsing = parsing + loaded - start;
 
-    IRI outputPath = IRI.create(new File(outputPathString));
-    IRI outputIRI = IRI.create(outputIRIString);
+      // copy the axioms, then unload the input
+      for(OWLOntology ontology: source.getOntologies()) {
+        if(!copied.add(ontology.getOntologyID())) {
+          continue;
+        }
+        manager.addAxioms(merged, ontology.getAxioms());
+      }
+      for(OWLOntology ontology:
+          new ArrayList<OWLOntology>(source.getOntologies())) {
+        source.removeOntology(ontology);
+      }
+      merging = merging + System.nanoTime() - loaded;
+    }
+    System.out.println(String.format("Parsed %d ontologies in %d ms",
+          copied.size(), parsing / 1000000));
+    System.out.println(String.format("Merged in %d ms", merging / 1000000));
 
-    return merge(manager, outputPath, outputIRI);
+    if(!save(manager, merged, outputPath) || failed) {
+      return null;
+    }
+    return merged;
   }
 
   /**
@@ -99,25 +365,65 @@ public class Merger {
    */
   public static OWLOntology merge(OWLOntologyManager manager,
       IRI outputPath, IRI outputIRI) {
+    return merge(manager, manager, outputPath, outputIRI);
+  }
+
+  /**
+   * Given a set of ontologies to merge, a manager for the result,
+   * an output path, and an output IRI,
+   * merge the ontologies into a new ontology with that IRI and write it.
+   * The time taken to merge and to save is printed.
+   *
+   * @param ontologies the ontologies to merge
+   * @param manager the manager to create the resulting ontology with
+   * @param outputPath the path to save the resulting ontology file
+   * @param outputIRI the IRI string of the resulting ontology
+   * @return the merged ontology,
+   *   or null if it could not be merged or saved
+   */
+  public static OWLOntology merge(OWLOntologySetProvider ontologies,
+      OWLOntologyManager manager, IRI outputPath, IRI outputIRI) {
     OWLOntology merged = null;
     
     // merge
+    long start = System.nanoTime();
     try {
-      OWLOntologyMerger merger = new OWLOntologyMerger(manager);
+      OWLOntologyMerger merger = new OWLOntologyMerger(ontologies);
       merged = merger.createMergedOntology(manager, outputIRI);
     } catch (OWLOntologyCreationException e) {
       System.out.println("ERROR: Could not merge ontologyies");
       System.out.println(e.getMessage());
     }
+    System.out.println(String.format("Merged in %d ms",
+          (System.nanoTime() - start) / 1000000));
 
-    // write
+    if(merged == null || !save(manager, merged, outputPath)) {
+      return null;
+    }
+    return merged;
+  }
+
+  /**
+   * Given a manager, an ontology, and an output path,
+   * save the ontology and print the time taken.
+   *
+   * @param manager the manager of the ontology
+   * @param ontology the ontology to save
+   * @param outputPath the path to save the ontology file
+   * @return true if the ontology was saved, false otherwise
+   */
+  private static boolean save(OWLOntologyManager manager,
+      OWLOntology ontology, IRI outputPath) {
+    long start = System.nanoTime();
     try {
-      manager.saveOntology(merged, outputPath);
+      manager.saveOntology(ontology, outputPath);
     } catch (Exception e) {
       System.out.println("ERROR: Could not save ontology to: " + outputPath);
+      return false;
     }
-
-    return merged;
+    System.out.println(String.format("Saved in %d ms",
+          (System.nanoTime() - start) / 1000000));
+    return true;
   }
 
 }
@@ -3,18 +3,26 @@ package obo_tutorial;
 import java.io.IOException;
 import java.io.File;
 import java.io.FileInputStream;
-import java.io.FileOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
 import java.util.Map;
+import java.util.HashMap;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Iterator;
+import java.util.Properties;
 
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RiotException;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import com.hp.hpl.jena.tdb.TDB;
 import com.hp.hpl.jena.tdb.TDBFactory;
 import com.hp.hpl.jena.update.GraphStore;
+import com.hp.hpl.jena.sparql.core.DatasetGraphFactory;
+import com.hp.hpl.jena.sparql.graph.GraphFactory;
 import com.hp.hpl.jena.sparql.modify.GraphStoreBasic;
-import org.apache.jena.riot.RDFDataMgr;
-import org.apache.jena.riot.RDFFormat;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
 import com.hp.hpl.jena.ontology.OntModel;
@@ -22,16 +30,21 @@ import com.hp.hpl.jena.ontology.OntModelSpec;
 import com.hp.hpl.jena.graph.Graph;
 import com.hp.hpl.jena.graph.Node;
 import com.hp.hpl.jena.graph.NodeFactory;
-import com.hp.hpl.jena.update.UpdateExecutionFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
 import com.hp.hpl.jena.update.UpdateFactory;
-import com.hp.hpl.jena.update.UpdateRequest;
-import com.hp.hpl.jena.update.UpdateProcessor;
 
 /**
  *
  * @author <a href="mailto:james@overton.ca">James A. Overton</a>
  */
 public class Modeller {
+  /**
+   * The name of the file in a persistent store directory
+   * that records the state of the loaded ontology file.
+   */
+  public static final String STORE_STATE_FILE = "obo-tutorial-store.properties";
+
   /**
    * Given a path to a Turtle file with instance data,
    * a path to an application ontology file,
@@ -85,31 +98,378 @@ public class Modeller {
    */
   public static Model convert(String dataPath, String ontologyPath,
       String sparqlPath, String outputPath) {
-    // load the data and get the tutorial URI
-    Model data = RDFDataMgr.loadModel(dataPath);
-    Map<String,String> prefixMap = data.getNsPrefixMap();
-    String tutorialIRI = prefixMap.get("tutorial");
+    return convert(dataPath, ontologyPath, sparqlPath, outputPath,
+        RDFOutput.TURTLE_PRETTY, null, 0, null);
+  }
+
+  /**
+   * Given a path to an RDF file with instance data,
+   * a path to an application ontology file,
+   * a path to a SPARQL Update file,
+   * an output file path, an output format,
+   * an optional directory for a persistent store, a batch size,
+   * and an optional path for an ontology index,
+   * Load the instance data and ontology, run the queries,
+   * and save the resulting "tutorial:data" graph to the output file.
+   * The format of the instance data is detected (see RDFInput),
+   * so it can be any format written by the convert command.
+   * Formats without prefixes, such as N-Triples,
+   * take their prefixes from the SPARQL files.
+   * The SPARQL path can be a directory of files,
+   * which are run in order of their names (see UpdatePipeline).
+   *
+   * With a persistent store, the ontology graph is kept between runs,
+   * and only reloaded when the ontology file changes (see loadOntology).
+   * The raw and data graphs are replaced on every run.
+   * Only one process may use a store at a time.
+   *
+   * With an ontology index, the ontology graph only holds
+   * the labels and types of the ontology (see OntologyIndex),
+   * read from a cached index file that is rebuilt
+   * when the ontology file changes.
+   *
+   * With a batch size of 1 or more,
+   * load the ontology, then stream the instance data in batches of rows,
+   * run the queries on each batch,
+   * and write the resulting "tutorial:data" triples to the output file
+   * before the next batch is read (see UpdateBatcher).
+   * Peak memory depends on the batch size, not the size of the data,
+   * except that pretty Turtle output is held in memory until the end.
+   * The ontology graph is shared by all the batches;
+   * with a persistent store it is read from the store.
+   * The "tutorial" prefix must be declared in the SPARQL files.
+   * With a batch size less than 1 the queries run on all rows at once.
+   *
+   * @param dataPath the path of the input RDF file
+   * @param ontologyPath the path of the application ontology file
+   * @param sparqlPath the path of a SPARQL Update file,
+   *   or of a directory of them
+   * @param outputPath the path of the output RDF file
+   * @param format the output format (see RDFOutput)
+   * @param storePath the directory of a persistent TDB store,
+   *   or null to use an in-memory store
+   * @param batchSize the number of rows to run the queries on at once,
+   *   or 0 to run them on all the rows at once
+   * @param indexPath the path of a cached ontology index,
+   *   or null to use the whole ontology
+   * @return a Jena Model for "tutorial:data",
+   *   backed by the store if there is one,
+   *   or null if the format was streamed
+   */
+  public static Model convert(String dataPath, String ontologyPath,
+      String sparqlPath, String outputPath, String format,
+      String storePath, int batchSize, String indexPath) {
+    if(storePath != null) {
+      return convertStore(dataPath, ontologyPath, sparqlPath, outputPath,
+          format, storePath, batchSize, indexPath);
+    }
+
+    // load the SPARQL files
+    UpdatePipeline pipeline = null;
+    try {
+      pipeline = UpdatePipeline.load(sparqlPath);
+    } catch (IOException e) {
+      System.out.println("Could not read SPARQL files at " + sparqlPath);
+      return ModelFactory.createDefaultModel();
+    }
 
     // load ontology with imports
-    OntModel ont = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM);
-    ont.read(ontologyPath);
+    Graph ontology = null;
+    try {
+      ontology = readOntology(ontologyPath, indexPath);
+    } catch (IOException e) {
+      System.out.println("Could not read ontology index at " + indexPath);
+      return ModelFactory.createDefaultModel();
+    }
+
+    return convert(dataPath, ontology, pipeline, outputPath, format,
+        batchSize);
+  }
+
+  /**
+   * Given a path to an RDF file with instance data,
+   * an application ontology graph that is already loaded,
+   * a pipeline of SPARQL Update requests that is already parsed,
+   * an output file path, an output format, and a batch size,
+   * Load the instance data, run the queries,
+   * and save the resulting "tutorial:data" graph to the output file.
+   * The ontology graph is used as it is, not copied,
+   * so one graph can be shared by many runs, even at the same time,
+   * as long as the queries do not change it.
+   * Runs at the same time need their own pipelines
+   * (see UpdatePipeline.copy).
+   * The batch size is used as for the path-based convert().
+   *
+   * @param dataPath the path of the input RDF file
+   * @param ontology the application ontology graph
+   * @param pipeline the SPARQL Update requests to run
+   * @param outputPath the path of the output RDF file
+   * @param format the output format (see RDFOutput)
+   * @param batchSize the number of rows to run the queries on at once,
+   *   or 0 to run them on all the rows at once
+   * @return a Jena Model for "tutorial:data",
+   *   or null if the format was streamed
+   */
+  public static Model convert(String dataPath, Graph ontology,
+      UpdatePipeline pipeline, String outputPath, String format,
+      int batchSize) {
+    if(batchSize >= 1) {
+      Map<String,String> prefixMap = pipeline.getPrefixMap();
+      if(prefixMap.get("tutorial") == null) {
+        System.out.println("No tutorial prefix in SPARQL files");
+        return ModelFactory.createDefaultModel();
+      }
+      return convertBatches(dataPath, ontology, pipeline, prefixMap,
+          outputPath, format, batchSize);
+    }
+
+    // load the data
+    Model data = null;
+    try {
+      data = RDFInput.loadModel(dataPath);
+    } catch (IOException e) {
+      System.out.println("Could not read data file at " + dataPath);
+      return ModelFactory.createDefaultModel();
+    }
+    Map<String,String> prefixMap = getPrefixMap(data, pipeline);
+    String tutorialIRI = prefixMap.get("tutorial");
+
+    // the data is updated in memory, sharing the ontology graph
+    GraphStore gs = new GraphStoreBasic(DatasetGraphFactory.createMem());
+    gs.addGraph(NodeFactory.createURI(tutorialIRI + "ontology"), ontology);
+    gs.addGraph(NodeFactory.createURI(tutorialIRI + "raw"),
+                data.getGraph());
+
+    return convert(gs, prefixMap, pipeline, outputPath, format);
+  }
+
+  /**
+   * Given instance data and a pipeline of SPARQL Update requests,
+   * return the prefixes of the data,
+   * with any missing prefixes taken from the SPARQL files.
+   *
+   * @param data the instance data
+   * @param pipeline the SPARQL Update requests
+   * @return a map from prefix to IRI string
+   */
+  private static Map<String,String> getPrefixMap(Model data,
+      UpdatePipeline pipeline) {
+    Map<String,String> prefixMap =
+      new HashMap<String,String>(data.getNsPrefixMap());
+    for(Map.Entry<String,String> entry:
+        pipeline.getPrefixMap().entrySet()) {
+      if(!prefixMap.containsKey(entry.getKey())) {
+        prefixMap.put(entry.getKey(), entry.getValue());
+      }
+    }
+    return prefixMap;
+  }
+
+  /**
+   * Load the SPARQL files, open the persistent store,
+   * load the ontology into it if it has changed,
+   * then run the queries on all the rows or in batches.
+   * See convert() for the arguments.
+   */
+  private static Model convertStore(String dataPath, String ontologyPath,
+      String sparqlPath, String outputPath, String format,
+      String storePath, int batchSize, String indexPath) {
+    // load the SPARQL files
+    UpdatePipeline pipeline = null;
+    try {
+      pipeline = UpdatePipeline.load(sparqlPath);
+    } catch (IOException e) {
+      System.out.println("Could not read SPARQL files at " + sparqlPath);
+      return ModelFactory.createDefaultModel();
+    }
+
+    // load the data, unless it will be streamed in batches
+    Model data = null;
+    Map<String,String> prefixMap = pipeline.getPrefixMap();
+    if(batchSize < 1) {
+      try {
+        data = RDFInput.loadModel(dataPath);
+      } catch (IOException e) {
+        System.out.println("Could not read data file at " + dataPath);
+        return ModelFactory.createDefaultModel();
+      }
+      prefixMap = getPrefixMap(data, pipeline);
+    }
+    String tutorialIRI = prefixMap.get("tutorial");
+    if(tutorialIRI == null) {
+      System.out.println("No tutorial prefix in SPARQL files at " +
+          sparqlPath);
+      return ModelFactory.createDefaultModel();
+    }
+
+    // open the store and load ontology with imports if it has changed
+    Node ontologyNode = NodeFactory.createURI(tutorialIRI + "ontology");
+    GraphStore gs =
+      new GraphStoreBasic(TDBFactory.createDatasetGraph(storePath));
+    try {
+      loadOntology(gs, ontologyNode, ontologyPath, storePath, indexPath);
+    } catch (IOException e) {
+      System.out.println("Could not update store at " + storePath);
+      return ModelFactory.createDefaultModel();
+    }
+
+    // the batches are updated in memory, reading the ontology from the store
+    if(batchSize >= 1) {
+      return convertBatches(dataPath, gs.getGraph(ontologyNode), pipeline,
+          prefixMap, outputPath, format, batchSize);
+    }
 
-    // create the graph store and load data
-    GraphStore gs = new GraphStoreBasic(TDBFactory.createDatasetGraph());
+    // replace the data from any earlier run
     gs.addGraph(NodeFactory.createURI(tutorialIRI + "raw"),
                 data.getGraph());
-    gs.addGraph(NodeFactory.createURI(tutorialIRI + "ontology"),
-                ont.getGraph());
+    gs.removeGraph(NodeFactory.createURI(tutorialIRI + "data"));
 
-    // load the SPARQL file
-    FileInputStream sparqlFile = null;
+    Model m = convert(gs, prefixMap, pipeline, outputPath, format);
+    TDB.sync(gs);
+    return m;
+  }
+
+  /**
+   * Given an ontology graph and a pipeline,
+   * stream the instance data in batches of rows,
+   * run the queries on each batch,
+   * and write the resulting "tutorial:data" triples to the output file.
+   * The prefix map must include the "tutorial" prefix.
+   * See convert() for the other arguments.
+   */
+  private static Model convertBatches(String dataPath, Graph ontology,
+      UpdatePipeline pipeline, Map<String,String> prefixMap,
+      String outputPath, String format, int batchSize) {
+    String tutorialIRI = prefixMap.get("tutorial");
+
+    // each batch is updated in memory, sharing the ontology graph
+    GraphStore gs = new GraphStoreBasic(DatasetGraphFactory.createMem());
+    Graph raw = GraphFactory.createGraphMem();
+    gs.addGraph(NodeFactory.createURI(tutorialIRI + "raw"), raw);
+    gs.addGraph(NodeFactory.createURI(tutorialIRI + "ontology"), ontology);
+    Node dataNode = NodeFactory.createURI(tutorialIRI + "data");
+
+    // stream the data through the batches to the output
+    Model m = null;
     try {
-      sparqlFile = new FileInputStream(sparqlPath);
+      OutputStream output = RDFOutput.open(outputPath, format);
+      boolean finished = false;
+      try {
+        StreamRDF stream;
+        if(RDFOutput.isStreaming(format)) {
+          stream = RDFOutput.createStream(output, format, null);
+        } else {
+          m = ModelFactory.createDefaultModel();
+          stream = StreamRDFLib.graph(m.getGraph());
+        }
+        UpdateBatcher batcher = new UpdateBatcher(gs, raw, dataNode,
+            pipeline, batchSize, stream, prefixMap);
+        InputStream input = RDFInput.open(dataPath);
+        try {
+          RDFDataMgr.parse(batcher, input, RDFInput.getLang(dataPath));
+          batcher.finish();
+        } finally {
+          input.close();
+        }
+        if(m == null) {
+          stream.finish();
+        } else {
+          RDFOutput.write(output, m, format);
+        }
+        finished = true;
+      } finally {
+        output.close();
+        // do not leave a truncated output file
+        if(!finished) {
+          new File(outputPath).delete();
+        }
+      }
     } catch (IOException e) {
-      System.out.println("Could not read SPARQL file at " + sparqlPath);
+      System.out.println("Could not model data at " + dataPath +
+          " to " + outputPath);
+    } catch (RiotException e) {
+      System.out.println("Could not parse data at " + dataPath);
+      System.out.println(e.getMessage());
+    } catch (RuntimeException e) {
+      System.out.println("Could not model data at " + dataPath +
+          " to " + outputPath);
+      System.out.println(e.getMessage());
+    }
+
+    pipeline.report();
+    return m;
+  }
+
+  /**
+   * Given a path to an application ontology file,
+   * and an optional path to a cached ontology index,
+   * return the ontology graph to run the queries against:
+   * either the whole ontology with its imports,
+   * or just its labels and types from the index (see OntologyIndex).
+   *
+   * @param ontologyPath the path of the application ontology file
+   * @param indexPath the path of a cached ontology index,
+   *   or null to use the whole ontology
+   * @return the ontology graph
+   * @throws IOException if the index cannot be read or written
+   */
+  public static Graph readOntology(String ontologyPath, String indexPath)
+      throws IOException {
+    if(indexPath != null) {
+      return OntologyIndex.load(ontologyPath, indexPath);
     }
+    OntModel ont = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM);
+    ont.read(ontologyPath);
+    return ont.getGraph();
+  }
 
-    return convert(gs, prefixMap, sparqlFile, outputPath);
+  /**
+   * Given a persistent graph store, the name of its ontology graph,
+   * a path to an application ontology file,
+   * the directory of the store,
+   * and an optional path to a cached ontology index,
+   * load the ontology graph (see readOntology),
+   * unless the store already holds this version of the file,
+   * read the same way.
+   * The state of the ontology file is recorded in STORE_STATE_FILE
+   * in the store directory (see FileState),
+   * after the ontology graph has been written to disk.
+   * Changes to imported files are not detected.
+   *
+   * @param gs the persistent graph store
+   * @param ontologyNode the name of the ontology graph
+   * @param ontologyPath the path of the application ontology file
+   * @param storePath the directory of the store
+   * @param indexPath the path of a cached ontology index,
+   *   or null to use the whole ontology
+   * @return true if the ontology was loaded, false if it was unchanged
+   * @throws IOException if the state of the ontology cannot be checked
+   *   or recorded, or the index cannot be read
+   */
+  public static boolean loadOntology(GraphStore gs, Node ontologyNode,
+      String ontologyPath, String storePath, String indexPath)
+      throws IOException {
+    String statePath = new File(storePath, STORE_STATE_FILE).getPath();
+    Properties state = FileState.loadProperties(statePath);
+    FileState ontologyState = new FileState(ontologyPath);
+    String content = "ontology";
+    if(indexPath != null) {
+      content = "index";
+    }
+    if(gs.containsGraph(ontologyNode) &&
+       content.equals(state.getProperty("ontology.content", "ontology")) &&
+       ontologyState.matches(state, "ontology")) {
+      FileState.saveProperties(state, statePath);
+      return false;
+    }
+
+    gs.addGraph(ontologyNode, readOntology(ontologyPath, indexPath));
+    TDB.sync(gs);
+
+    ontologyState.record(state, "ontology");
+    state.setProperty("ontology.content", content);
+    FileState.saveProperties(state, statePath);
+    return true;
   }
 
   /**
@@ -126,23 +486,64 @@ public class Modeller {
    */
   public static Model convert(GraphStore gs, Map<String,String> prefixMap,
       FileInputStream sparqlFile, String outputPath) {
+    UpdatePipeline pipeline = new UpdatePipeline();
+    pipeline.add("update", UpdateFactory.read(sparqlFile));
+    return convert(gs, prefixMap, pipeline, outputPath,
+        RDFOutput.TURTLE_PRETTY);
+  }
+
+  /**
+   * Given a Jena graph store, a map of prefixes to IRIs,
+   * a pipeline of SPARQL Update requests, an output file path,
+   * and an output format,
+   * run the queries in order, reporting the time and changes of each,
+   * and save the resulting "tutorial:data" graph to the output file.
+   * Streaming formats are written straight from the graph's triples,
+   * and no Model is returned,
+   * so the graph store can be freed as soon as the file is written;
+   * pretty Turtle needs a Model of the whole graph.
+   *
+   * @param gs a collection of graphs containing the instance and ontology data
+   * @param prefixMap the prefixes to use
+   * @param pipeline the SPARQL Update requests to run
+   * @param outputPath the path of the output RDF file
+   * @param format the output format (see RDFOutput)
+   * @return a Jena Model for "tutorial:data",
+   *   or null if the format was streamed
+   */
+  public static Model convert(GraphStore gs, Map<String,String> prefixMap,
+      UpdatePipeline pipeline, String outputPath, String format) {
     String tutorialIRI = prefixMap.get("tutorial");
 
-    // run update
-    UpdateRequest ur = UpdateFactory.read(sparqlFile);
-    UpdateProcessor up = UpdateExecutionFactory.create(ur, gs);
-    up.execute();
-    
+    // run updates
+    pipeline.run(gs);
+
     // write
     Node dataNode = NodeFactory.createURI(tutorialIRI + "data");
-    Model m = ModelFactory.createDefaultModel();
+    Graph data = gs.getGraph(dataNode);
+    Model m = null;
     try {
-      m = ModelFactory.createModelForGraph(gs.getGraph(dataNode));
-      m.setNsPrefixes(prefixMap);
-      FileOutputStream output = new FileOutputStream(outputPath);
-      RDFDataMgr.write(output, m, RDFFormat.TURTLE_PRETTY);
+      OutputStream output = RDFOutput.open(outputPath, format);
+      if(RDFOutput.isStreaming(format)) {
+        StreamRDF stream = RDFOutput.createStream(output, format, prefixMap);
+        ExtendedIterator<Triple> triples =
+          data.find(Node.ANY, Node.ANY, Node.ANY);
+        try {
+          while(triples.hasNext()) {
+            stream.triple(triples.next());
+          }
+        } finally {
+          triples.close();
+        }
+        stream.finish();
+      } else {
+        m = ModelFactory.createModelForGraph(data);
+        m.setNsPrefixes(prefixMap);
+        RDFOutput.write(output, m, format);
+      }
+      output.close();
     } catch (IOException e) {
-      System.out.println("Could not write output Turtle file to " + outputPath);
+      System.out.println("Could not write output RDF file to " + outputPath);
     }
 
     return m;
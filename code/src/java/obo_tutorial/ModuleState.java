@@ -0,0 +1,151 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Set;
+import java.util.HashSet;
+import java.util.Properties;
+
+import org.semanticweb.owlapi.apibinding.OWLManager;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+
+import uk.ac.manchester.cs.owlapi.modularity.ModuleType;
+
+/**
+ * The state of an extracted module, kept in files next to it,
+ * so that a module can be updated without extracting it again
+ * when only its term list has changed in ways that cannot change it.
+ *
+ * Three files are kept next to the module file:
+ * TERMS_SUFFIX, the directives of the term list it was extracted with;
+ * SIGNATURE_SUFFIX, the IRIs in the signature of the logical axioms
+ * of the module before classes were removed;
+ * and STATE_SUFFIX, the state of the source and module files
+ * (see FileState), the module IRI, and the module type.
+ *
+ * A locality-based module is the same for any seed signature
+ * between its seeds and its own signature,
+ * so seeds that are already in the signature of its logical axioms
+ * do not change it, and "remove" lines can be applied
+ * to the saved module.
+ * Any other change needs a full extraction:
+ * a changed module type, changed "strip" lines, removed seeds, seeds outside the module,
+ * removed "remove" lines, or a changed source or module file.
+ * Changes to files imported by the source are not detected.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class ModuleState {
+  /**
+   * The suffix of the properties file that records the file states.
+   */
+  public static final String STATE_SUFFIX = ".properties";
+
+  /**
+   * The suffix of the term list file that records the directives.
+   */
+  public static final String TERMS_SUFFIX = ".terms";
+
+  /**
+   * The suffix of the term list file that records the module signature.
+   */
+  public static final String SIGNATURE_SUFFIX = ".signature";
+
+  /**
+   * Given the paths of a source ontology and a module file,
+   * the module IRI, the new directives of its term list,
+   * and the module type,
+   * update the module without extracting it if that gives
+   * the same module as a full extraction.
+   * When the module is updated, its state is saved.
+   *
+   * @param sourcePath the path of the source ontology file
+   * @param targetPath the path of the module file
+   * @param targetIRI the IRI of the module
+   * @param terms the new directives
+   * @param moduleType the type of module to extract
+   * @return true if the module is up to date, false if it must be extracted
+   * @throws IOException if the state files cannot be read or written
+   */
+  public static boolean update(String sourcePath, String targetPath,
+      String targetIRI, TermList terms, ModuleType moduleType)
+      throws IOException {
+    String statePath = targetPath + STATE_SUFFIX;
+    File termsFile = new File(targetPath + TERMS_SUFFIX);
+    File signatureFile = new File(targetPath + SIGNATURE_SUFFIX);
+    Properties state = FileState.loadProperties(statePath);
+    if(!new File(targetPath).exists() || !termsFile.exists() ||
+       !signatureFile.exists() ||
+       !targetIRI.equals(state.getProperty("iri")) ||
+       !moduleType.name().equals(state.getProperty("module-type")) ||
+       !new FileState(sourcePath).matches(state, "source") ||
+       !new FileState(targetPath).matches(state, "module")) {
+      return false;
+    }
+
+    TermList previous = TermList.read(termsFile);
+    Set<IRI> signature = TermList.read(signatureFile).getIncluded();
+    Set<IRI> added = new HashSet<IRI>(terms.getIncluded());
+    added.removeAll(previous.getIncluded());
+    if(!previous.getStripped().equals(terms.getStripped()) ||
+       !terms.getIncluded().containsAll(previous.getIncluded()) ||
+       !signature.containsAll(added) ||
+       !terms.getRemoved().containsAll(previous.getRemoved())) {
+      return false;
+    }
+
+    Set<IRI> removed = new HashSet<IRI>(terms.getRemoved());
+    removed.removeAll(previous.getRemoved());
+    if(removed.isEmpty()) {
+      System.out.println("Module is up to date: " + targetPath);
+    } else {
+      System.out.println("Removing " + removed.size() +
+          " classes from module " + targetPath);
+      OWLOntologyManager manager = OWLManager.createOWLOntologyManager();
+      try {
+        OWLOntology module =
+          manager.loadOntologyFromOntologyDocument(new File(targetPath));
+        Extractor.removeClasses(module, removed);
+        manager.saveOntology(module);
+      } catch (Exception e) {
+        throw new IOException("Could not update module " + targetPath, e);
+      }
+    }
+    save(sourcePath, targetPath, targetIRI, terms, signature, moduleType);
+    return true;
+  }
+
+  /**
+   * Given the paths of a source ontology and a module file,
+   * the module IRI, the directives of its term list,
+   * the signature of the logical axioms of the module
+   * before classes were removed, and the module type,
+   * save the state of the module.
+   *
+   * @param sourcePath the path of the source ontology file
+   * @param targetPath the path of the module file
+   * @param targetIRI the IRI of the module
+   * @param terms the directives the module was extracted with
+   * @param signature the IRIs in the signature of the logical axioms
+   * @param moduleType the type of the module
+   * @throws IOException if the state files cannot be written
+   */
+  public static void save(String sourcePath, String targetPath,
+      String targetIRI, TermList terms, Set<IRI> signature,
+      ModuleType moduleType) throws IOException {
+    terms.write(new File(targetPath + TERMS_SUFFIX));
+    TermList list = new TermList();
+    list.getIncluded().addAll(signature);
+    list.write(new File(targetPath + SIGNATURE_SUFFIX));
+
+    Properties state = new Properties();
+    state.setProperty("iri", targetIRI);
+    state.setProperty("module-type", moduleType.name());
+    new FileState(sourcePath).record(state, "source");
+    new FileState(targetPath).record(state, "module");
+    FileState.saveProperties(state, targetPath + STATE_SUFFIX);
+  }
+
+}
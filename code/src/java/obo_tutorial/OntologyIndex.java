@@ -0,0 +1,153 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.Properties;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.ontology.OntModel;
+import com.hp.hpl.jena.ontology.OntModelSpec;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.sparql.graph.GraphFactory;
+import com.hp.hpl.jena.util.iterator.ExtendedIterator;
+
+/**
+ * A cached index of the labels and types of an ontology,
+ * for SPARQL rules that only need those from the ontology graph.
+ * Reading the index is much faster than parsing the ontology
+ * and its imports.
+ *
+ * The index is a gzip-compressed N-Triples file
+ * with the rdfs:label and rdf:type triples of the ontology and its imports.
+ * The state of the ontology file it was built from is kept
+ * in a properties file next to it (see FileState),
+ * and the index is rebuilt when the ontology file changes.
+ * Changes to imported files are not detected.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class OntologyIndex {
+  /**
+   * The predicates of the triples that are kept in the index.
+   */
+  public static final Node[] PREDICATES = {
+    NodeFactory.createURI("http://www.w3.org/2000/01/rdf-schema#label"),
+    NodeFactory.createURI("http://www.w3.org/1999/02/22-rdf-syntax-ns#type")
+  };
+
+  /**
+   * The suffix of the properties file that records the ontology state.
+   */
+  public static final String STATE_SUFFIX = ".properties";
+
+  /**
+   * Given a path to an ontology file and a path to its index,
+   * return a graph of the indexed triples.
+   * The index is read if it was built from the current ontology file,
+   * otherwise it is built and written first.
+   *
+   * @param ontologyPath the path of the ontology file
+   * @param indexPath the path of the index file
+   * @return a graph of the labels and types of the ontology
+   * @throws IOException if the index cannot be read or written
+   */
+  public static Graph load(String ontologyPath, String indexPath)
+      throws IOException {
+    String statePath = indexPath + STATE_SUFFIX;
+    Properties state = FileState.loadProperties(statePath);
+    FileState ontologyState = new FileState(ontologyPath);
+    if(new File(indexPath).exists() &&
+       ontologyState.matches(state, "ontology")) {
+      FileState.saveProperties(state, statePath);
+      return read(indexPath);
+    }
+
+    Graph index = build(ontologyPath);
+    write(index, indexPath);
+    ontologyState.record(state, "ontology");
+    FileState.saveProperties(state, statePath);
+    return index;
+  }
+
+  /**
+   * Given a path to an ontology file,
+   * read it with its imports and collect the indexed triples.
+   *
+   * @param ontologyPath the path of the ontology file
+   * @return a graph of the labels and types of the ontology
+   */
+  public static Graph build(String ontologyPath) {
+    OntModel ont = ModelFactory.createOntologyModel(OntModelSpec.OWL_MEM);
+    ont.read(ontologyPath);
+    Graph source = ont.getGraph();
+    Graph index = GraphFactory.createGraphMem();
+    for(Node predicate: PREDICATES) {
+      ExtendedIterator<Triple> triples =
+        source.find(Node.ANY, predicate, Node.ANY);
+      try {
+        while(triples.hasNext()) {
+          index.add(triples.next());
+        }
+      } finally {
+        triples.close();
+      }
+    }
+    return index;
+  }
+
+  /**
+   * Given a graph and a path, write the graph as an index file.
+   *
+   * @param index the graph of indexed triples
+   * @param indexPath the path of the index file
+   * @throws IOException if the file cannot be written
+   */
+  public static void write(Graph index, String indexPath)
+      throws IOException {
+    OutputStream output = RDFOutput.open(indexPath, RDFOutput.NTRIPLES_GZIP);
+    try {
+      StreamRDF stream =
+        RDFOutput.createStream(output, RDFOutput.NTRIPLES_GZIP, null);
+      ExtendedIterator<Triple> triples =
+        index.find(Node.ANY, Node.ANY, Node.ANY);
+      try {
+        while(triples.hasNext()) {
+          stream.triple(triples.next());
+        }
+      } finally {
+        triples.close();
+      }
+      stream.finish();
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Given the path of an index file, read it into a graph.
+   *
+   * @param indexPath the path of the index file
+   * @return a graph of the indexed triples
+   * @throws IOException if the file cannot be read
+   */
+  public static Graph read(String indexPath) throws IOException {
+    Graph index = GraphFactory.createGraphMem();
+    InputStream input = RDFInput.open(indexPath);
+    try {
+      RDFDataMgr.parse(StreamRDFLib.graph(index), input, Lang.NTRIPLES);
+    } finally {
+      input.close();
+    }
+    return index;
+  }
+
+}
@@ -0,0 +1,159 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Properties;
+
+import org.semanticweb.owlapi.io.OWLFunctionalSyntaxOntologyFormat;
+import org.semanticweb.owlapi.model.IRI;
+import org.semanticweb.owlapi.model.OWLOntology;
+import org.semanticweb.owlapi.model.OWLOntologyCreationException;
+import org.semanticweb.owlapi.model.OWLOntologyManager;
+import org.semanticweb.owlapi.model.OWLOntologyStorageException;
+
+/**
+ * A cache of snapshots of source ontologies in OWL functional syntax,
+ * which the OWL API reads much faster than RDF/XML,
+ * for the extract and merge commands.
+ *
+ * A snapshot is named by the SHA-256 digest of its source file,
+ * so it is only used for the exact file it was written from.
+ * The digests of source files are recorded in SNAPSHOT_STATE_FILE
+ * in the snapshot directory (see FileState),
+ * so unchanged files are not read to compute their digests.
+ * Only the source file is snapshot, not its imports:
+ * import declarations are kept, and loaded as usual.
+ * Old snapshots are not deleted.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class OntologySnapshot {
+  /**
+   * The name of the file in a snapshot directory
+   * that records the digests of source files.
+   */
+  public static final String SNAPSHOT_STATE_FILE =
+    "obo-tutorial-snapshots.properties";
+
+  /**
+   * The file extension of snapshot files.
+   */
+  public static final String EXTENSION = ".ofn";
+
+  /**
+   * A lock for the state file, shared by all threads.
+   */
+  private static final Object LOCK = new Object();
+
+  /**
+   * Given a manager, the path of an ontology file,
+   * and an optional snapshot directory,
+   * load the ontology with its imports into the manager,
+   * from its snapshot if there is one.
+   * Otherwise load the file, and write a snapshot for next time.
+   * The time taken is printed.
+   *
+   * @param manager the manager to load the ontology into
+   * @param path the path of the ontology file
+   * @param snapshotDir the directory of snapshots,
+   *   or null to load the file without snapshots
+   * @return the loaded ontology
+   * @throws OWLOntologyCreationException if the ontology cannot be loaded
+   */
+  public static OWLOntology load(OWLOntologyManager manager, String path,
+      String snapshotDir) throws OWLOntologyCreationException {
+    File file = new File(path);
+    if(snapshotDir == null) {
+      return manager.loadOntologyFromOntologyDocument(file);
+    }
+
+    long start = System.nanoTime();
+    File snapshot = null;
+    try {
+      snapshot = getSnapshot(path, snapshotDir);
+    } catch (IOException e) {
+      System.out.println("Could not check snapshot of " + path);
+      return manager.loadOntologyFromOntologyDocument(file);
+    }
+
+    // warm: read the snapshot
+    if(snapshot.exists()) {
+      OWLOntology ontology = manager.loadOntologyFromOntologyDocument(snapshot);
+      System.out.println(String.format(
+            "Loaded %s from snapshot in %d ms",
+            path, (System.nanoTime() - start) / 1000000));
+      return ontology;
+    }
+
+    // cold: read the file and write the snapshot
+    OWLOntology ontology = manager.loadOntologyFromOntologyDocument(file);
+    long loaded = System.nanoTime();
+    try {
+      write(manager, ontology, snapshot);
+    } catch (Exception e) {
+      System.out.println("Could not write snapshot of " + path +
+          " to " + snapshot);
+    }
+    System.out.println(String.format(
+          "Loaded %s in %d ms, wrote snapshot in %d ms",
+          path, (loaded - start) / 1000000,
+          (System.nanoTime() - loaded) / 1000000));
+    return ontology;
+  }
+
+  /**
+   * Given the path of an ontology file and a snapshot directory,
+   * return the snapshot file for the current contents of the file,
+   * which may not exist yet.
+   *
+   * @param path the path of the ontology file
+   * @param snapshotDir the directory of snapshots
+   * @return the snapshot file
+   * @throws IOException if the file cannot be read,
+   *   or the state file cannot be written
+   */
+  public static File getSnapshot(String path, String snapshotDir)
+      throws IOException {
+    File dir = new File(snapshotDir);
+    dir.mkdirs();
+    FileState state = new FileState(path);
+    String key = new File(path).getAbsolutePath();
+    synchronized(LOCK) {
+      String statePath = new File(dir, SNAPSHOT_STATE_FILE).getPath();
+      Properties states = FileState.loadProperties(statePath);
+      if(!state.matches(states, key)) {
+        state.record(states, key);
+      }
+      FileState.saveProperties(states, statePath);
+      return new File(dir, states.getProperty(key + ".sha256") + EXTENSION);
+    }
+  }
+
+  /**
+   * Given a manager, an ontology, and a snapshot file,
+   * write the ontology to the snapshot file in functional syntax.
+   * The snapshot is first written to a temporary file and then renamed,
+   * so a snapshot that exists is always complete.
+   *
+   * @param manager the manager of the ontology
+   * @param ontology the ontology to write
+   * @param snapshot the snapshot file
+   * @throws IOException if the temporary file cannot be created or renamed
+   * @throws OWLOntologyStorageException if the ontology cannot be written
+   */
+  public static void write(OWLOntologyManager manager, OWLOntology ontology,
+      File snapshot) throws IOException, OWLOntologyStorageException {
+    File temp = File.createTempFile("snapshot", ".tmp",
+        snapshot.getParentFile());
+    try {
+      manager.saveOntology(ontology, new OWLFunctionalSyntaxOntologyFormat(),
+          IRI.create(temp));
+      if(!temp.renameTo(snapshot)) {
+        throw new IOException("Could not rename " + temp + " to " + snapshot);
+      }
+    } finally {
+      temp.delete();
+    }
+  }
+
+}
@@ -0,0 +1,98 @@
+package obo_tutorial;
+
+import java.util.Map;
+
+/**
+ * A character trie of prefix names for expanding CURIEs to IRIs.
+ * Expansion walks the CURIE up to its first colon without creating
+ * a substring for the prefix, and builds the IRI with one StringBuilder.
+ * The results match Jena's PrefixMapping.expandPrefix:
+ * strings without a colon or with an unknown prefix are returned as they are.
+ * A trie is immutable once built, so it can be shared by threads.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class PrefixTrie {
+  /**
+   * One character of a prefix name, with its first child
+   * and its next sibling.
+   */
+  private static class TrieNode {
+    final char character;
+    TrieNode child;
+    TrieNode sibling;
+    String namespace;
+
+    TrieNode(char character) {
+      this.character = character;
+    }
+
+    /**
+     * Find the child for a character, or null.
+     */
+    TrieNode find(char c) {
+      for(TrieNode node = child; node != null; node = node.sibling) {
+        if(node.character == c) {
+          return node;
+        }
+      }
+      return null;
+    }
+  }
+
+  /**
+   * The root of the trie, for the empty prefix.
+   */
+  private final TrieNode root = new TrieNode('\0');
+
+  /**
+   * Build a trie from a map of prefix names to namespace IRIs.
+   *
+   * @param prefixMap a map from prefix names to namespace IRIs
+   */
+  public PrefixTrie(Map<String,String> prefixMap) {
+    for(Map.Entry<String,String> entry: prefixMap.entrySet()) {
+      String prefix = entry.getKey();
+      TrieNode node = root;
+      for(int i = 0; i < prefix.length(); i++) {
+        TrieNode next = node.find(prefix.charAt(i));
+        if(next == null) {
+          next = new TrieNode(prefix.charAt(i));
+          next.sibling = node.child;
+          node.child = next;
+        }
+        node = next;
+      }
+      node.namespace = entry.getValue();
+    }
+  }
+
+  /**
+   * Expand a CURIE to an IRI.
+   *
+   * @param curie the CURIE to expand
+   * @return the IRI, or the same string if the prefix is not known
+   */
+  public String expand(String curie) {
+    TrieNode node = root;
+    for(int i = 0; i < curie.length(); i++) {
+      char c = curie.charAt(i);
+      if(c == ':') {
+        if(node.namespace == null) {
+          return curie;
+        }
+        StringBuilder iri = new StringBuilder(
+            node.namespace.length() + curie.length() - i - 1);
+        iri.append(node.namespace);
+        iri.append(curie, i + 1, curie.length());
+        return iri.toString();
+      }
+      node = node.find(c);
+      if(node == null) {
+        return curie;
+      }
+    }
+    return curie;
+  }
+
+}
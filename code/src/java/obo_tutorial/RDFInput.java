@@ -0,0 +1,98 @@
+package obo_tutorial;
+
+import java.io.BufferedInputStream;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPInputStream;
+
+import org.apache.jena.riot.Lang;
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFLanguages;
+import com.hp.hpl.jena.rdf.model.Model;
+import com.hp.hpl.jena.rdf.model.ModelFactory;
+
+/**
+ * Read RDF files written in any of the RDFOutput formats,
+ * detecting the format so that one tool can read
+ * whatever the previous tool wrote.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class RDFInput {
+  /**
+   * The first two bytes of every gzip file.
+   */
+  private static final int GZIP_MAGIC = 0x8b1f;
+
+  /**
+   * Given the path to an RDF file, load it into a new Model.
+   * Gzip compression is detected from the first bytes of the file,
+   * whatever the file name.
+   * The syntax is detected from the file name,
+   * without any ".gz" extension;
+   * when the name does not say, the file is read as Turtle,
+   * which also covers N-Triples.
+   *
+   * @param path the path of the RDF file
+   * @return a Model with the triples and prefixes of the file
+   * @throws IOException if the file cannot be read
+   */
+  public static Model loadModel(String path) throws IOException {
+    Model model = ModelFactory.createDefaultModel();
+    InputStream input = open(path);
+    try {
+      RDFDataMgr.read(model, input, getLang(path));
+    } finally {
+      input.close();
+    }
+    return model;
+  }
+
+  /**
+   * Given the path to an RDF file, open a buffered input stream for it,
+   * decompressing it if it starts with the gzip header.
+   * The caller must close the stream.
+   *
+   * @param path the path of the RDF file
+   * @return an input stream of the uncompressed file
+   * @throws IOException if the file cannot be read
+   */
+  public static InputStream open(String path) throws IOException {
+    InputStream input = new BufferedInputStream(new FileInputStream(path));
+    try {
+      input.mark(2);
+      int magic = input.read() | (input.read() << 8);
+      input.reset();
+      if(magic == GZIP_MAGIC) {
+        return new BufferedInputStream(new GZIPInputStream(input, 65536));
+      }
+      return input;
+    } catch (IOException e) {
+      input.close();
+      throw e;
+    } catch (RuntimeException e) {
+      input.close();
+      throw e;
+    }
+  }
+
+  /**
+   * Given the path to an RDF file,
+   * guess its syntax from the file name, ignoring any ".gz" extension.
+   *
+   * @param path the path of the RDF file
+   * @return the Lang for the file, or Turtle if the name does not say
+   */
+  public static Lang getLang(String path) {
+    if(path.endsWith(".gz")) {
+      path = path.substring(0, path.length() - 3);
+    }
+    Lang lang = RDFLanguages.filenameToLang(path);
+    if(lang == null) {
+      lang = Lang.TURTLE;
+    }
+    return lang;
+  }
+
+}
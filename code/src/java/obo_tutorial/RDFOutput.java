@@ -0,0 +1,164 @@
+package obo_tutorial;
+
+import java.io.BufferedOutputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Map;
+import java.util.zip.GZIPOutputStream;
+
+import org.apache.jena.riot.RDFDataMgr;
+import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
+import org.apache.jena.riot.writer.WriterStreamRDFBlocks;
+import com.hp.hpl.jena.rdf.model.Model;
+
+/**
+ * The RDF output formats shared by the tools,
+ * and helpers for writing them either from a whole Model
+ * or one triple at a time.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class RDFOutput {
+  /**
+   * Pretty Turtle, which needs the whole graph in memory.
+   */
+  public static final String TURTLE_PRETTY = "turtle-pretty";
+
+  /**
+   * Turtle written in blocks of triples with the same subject,
+   * as the triples arrive.
+   */
+  public static final String TURTLE_BLOCKS = "turtle-blocks";
+
+  /**
+   * N-Triples, written one triple at a time.
+   */
+  public static final String NTRIPLES = "ntriples";
+
+  /**
+   * N-Triples compressed with gzip, written one triple at a time.
+   * This is the smallest format on disk.
+   */
+  public static final String NTRIPLES_GZIP = "ntriples-gz";
+
+  /**
+   * The names of all the formats, for help messages.
+   */
+  public static final String FORMATS =
+    TURTLE_PRETTY + ", " + TURTLE_BLOCKS + ", " + NTRIPLES + ", " +
+    NTRIPLES_GZIP;
+
+  /**
+   * Check that a format name is known.
+   *
+   * @param format the name of the format
+   * @throws IllegalArgumentException if the format is unknown
+   */
+  public static void checkFormat(String format) {
+    if(!format.equals(TURTLE_PRETTY) &&
+       !format.equals(TURTLE_BLOCKS) &&
+       !format.equals(NTRIPLES) &&
+       !format.equals(NTRIPLES_GZIP)) {
+      throw new IllegalArgumentException("Unknown RDF format '" + format +
+          "', use one of: " + FORMATS);
+    }
+  }
+
+  /**
+   * Check whether a format can be written one triple at a time.
+   *
+   * @param format the name of the format
+   * @return true if the format can be streamed
+   */
+  public static boolean isStreaming(String format) {
+    checkFormat(format);
+    return !format.equals(TURTLE_PRETTY);
+  }
+
+  /**
+   * Check whether a format is N-Triples, compressed or not,
+   * so that files in it can be split and joined on line boundaries.
+   *
+   * @param format the name of the format
+   * @return true if the format is N-Triples
+   */
+  public static boolean isNTriples(String format) {
+    checkFormat(format);
+    return format.equals(NTRIPLES) || format.equals(NTRIPLES_GZIP);
+  }
+
+  /**
+   * Open a buffered output stream to a file for the given format,
+   * compressing it if the format requires.
+   * The caller must close the stream.
+   *
+   * @param path the path of the file to write
+   * @param format the name of the format
+   * @return an output stream for the file
+   * @throws IOException if the file cannot be opened
+   */
+  public static OutputStream open(String path, String format)
+      throws IOException {
+    checkFormat(format);
+    OutputStream output = new FileOutputStream(path);
+    if(format.equals(NTRIPLES_GZIP)) {
+      output = new GZIPOutputStream(output, 65536);
+    }
+    return new BufferedOutputStream(output);
+  }
+
+  /**
+   * Create a stream that writes triples to an output stream
+   * in a streaming format, and start it with the given prefixes.
+   * The output stream should come from open(),
+   * so that it is compressed if the format requires.
+   * The caller must call finish() on the stream when done.
+   *
+   * @param output the stream to write to
+   * @param format the name of a streaming format
+   * @param prefixMap the prefixes to declare, or null
+   * @return a started StreamRDF
+   * @throws IllegalArgumentException if the format cannot be streamed
+   */
+  public static StreamRDF createStream(OutputStream output, String format,
+      Map<String,String> prefixMap) {
+    StreamRDF stream;
+    if(isNTriples(format)) {
+      stream = StreamRDFLib.writer(output);
+    } else if(format.equals(TURTLE_BLOCKS)) {
+      stream = new WriterStreamRDFBlocks(output);
+    } else {
+      throw new IllegalArgumentException("Cannot stream RDF format " + format);
+    }
+    stream.start();
+    if(prefixMap != null) {
+      for(Map.Entry<String,String> entry: prefixMap.entrySet()) {
+        stream.prefix(entry.getKey(), entry.getValue());
+      }
+    }
+    return stream;
+  }
+
+  /**
+   * Write a whole Model to an output stream in the given format.
+   * The output stream should come from open(),
+   * so that it is compressed if the format requires.
+   *
+   * @param output the stream to write to
+   * @param model the model to write
+   * @param format the name of the format
+   */
+  public static void write(OutputStream output, Model model, String format) {
+    if(isNTriples(format)) {
+      RDFDataMgr.write(output, model, RDFFormat.NTRIPLES);
+    } else if(format.equals(TURTLE_BLOCKS)) {
+      RDFDataMgr.write(output, model, RDFFormat.TURTLE_BLOCKS);
+    } else {
+      RDFDataMgr.write(output, model, RDFFormat.TURTLE_PRETTY);
+    }
+  }
+
+}
@@ -0,0 +1,211 @@
+package obo_tutorial;
+
+import java.io.BufferedReader;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.List;
+import java.util.ArrayList;
+
+import au.com.bytecode.opencsv.CSVReader;
+
+/**
+ * A range of bytes in a CSV file that starts and ends on line boundaries,
+ * so that it can be read independently of the rest of the file.
+ * The header row is never part of a partition.
+ *
+ * Partitions are found by line breaks alone,
+ * so the data rows must not contain quoted line breaks.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class TablePartition {
+  /**
+   * The size of the buffer used to scan the file.
+   */
+  private static final int BUFFER_SIZE = 65536;
+
+  /**
+   * The path of the CSV file.
+   */
+  private final String path;
+
+  /**
+   * The offset of the first byte of the partition.
+   */
+  private final long start;
+
+  /**
+   * The offset just past the last byte of the partition.
+   */
+  private final long end;
+
+  /**
+   * Whether this partition ends at the end of the file.
+   */
+  private final boolean last;
+
+  /**
+   * Create a partition of a file.
+   *
+   * @param path the path of the CSV file
+   * @param start the offset of the first byte
+   * @param end the offset just past the last byte
+   * @param last true if end is the end of the file
+   */
+  public TablePartition(String path, long start, long end, boolean last) {
+    this.path = path;
+    this.start = start;
+    this.end = end;
+    this.last = last;
+  }
+
+  /**
+   * Given the path of a CSV file with a header row
+   * and a number of partitions,
+   * split the data rows into at most that many partitions
+   * of roughly equal size in bytes.
+   * Each boundary is moved forward to the start of the next line.
+   * Empty partitions are dropped, so fewer may be returned.
+   *
+   * @param path the path of the CSV file
+   * @param count the number of partitions to aim for
+   * @return the partitions in file order
+   * @throws IOException if the file cannot be read
+   */
+  public static List<TablePartition> split(String path, int count)
+      throws IOException {
+    List<TablePartition> partitions = new ArrayList<TablePartition>();
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      long size = channel.size();
+      long dataStart = nextLine(channel, 0, size);
+      long start = dataStart;
+      for(int i = 1; i <= count; i++) {
+        long end = size;
+        if(i < count) {
+          end = nextLine(channel,
+              dataStart + (size - dataStart) * i / count, size);
+        }
+        if(end > start) {
+          partitions.add(new TablePartition(path, start, end, end == size));
+          start = end;
+        }
+      }
+    } finally {
+      file.close();
+    }
+    return partitions;
+  }
+
+  /**
+   * Given a channel, an offset, and the size of the file,
+   * find the start of the first line after the offset.
+   * An offset just after a line break is already a line start.
+   *
+   * @param channel the file channel to read
+   * @param offset the offset to search from
+   * @param size the size of the file
+   * @return the offset of the next line start, or the size of the file
+   * @throws IOException if the file cannot be read
+   */
+  private static long nextLine(FileChannel channel, long offset, long size)
+      throws IOException {
+    if(offset == 0) {
+      offset = 1;
+    }
+    long position = offset - 1;
+    ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+    while(position < size) {
+      buffer.clear();
+      int read = channel.read(buffer, position);
+      if(read < 0) {
+        break;
+      }
+      for(int i = 0; i < read; i++) {
+        if(buffer.get(i) == '\n') {
+          return position + i + 1;
+        }
+      }
+      position = position + read;
+    }
+    return size;
+  }
+
+  /**
+   * Count the rows in this partition by counting line breaks.
+   * A last line without a line break is also counted.
+   *
+   * @return the number of rows
+   * @throws IOException if the file cannot be read
+   */
+  public int countRows() throws IOException {
+    int count = 0;
+    byte lastByte = '\n';
+    RandomAccessFile file = new RandomAccessFile(path, "r");
+    try {
+      FileChannel channel = file.getChannel();
+      ByteBuffer buffer = ByteBuffer.allocate(BUFFER_SIZE);
+      long position = start;
+      while(position < end) {
+        buffer.clear();
+        if(end - position < BUFFER_SIZE) {
+          buffer.limit((int) (end - position));
+        }
+        int read = channel.read(buffer, position);
+        if(read < 0) {
+          break;
+        }
+        for(int i = 0; i < read; i++) {
+          if(buffer.get(i) == '\n') {
+            count = count + 1;
+          }
+        }
+        if(read > 0) {
+          lastByte = buffer.get(read - 1);
+        }
+        position = position + read;
+      }
+    } finally {
+      file.close();
+    }
+    if(last && lastByte != '\n') {
+      count = count + 1;
+    }
+    return count;
+  }
+
+  /**
+   * Open a CSV reader positioned at the start of this partition.
+   * The reader is not limited to the partition,
+   * so read only as many rows as countRows() returns.
+   * The caller must close the reader.
+   *
+   * @return a CSV reader for the rows of this partition
+   * @throws IOException if the file cannot be read
+   */
+  public CSVReader openReader() throws IOException {
+    FileInputStream input = new FileInputStream(path);
+    input.getChannel().position(start);
+    return new CSVReader(new BufferedReader(new InputStreamReader(input)));
+  }
+
+  /**
+   * @return the offset of the first byte of the partition
+   */
+  public long getStart() {
+    return start;
+  }
+
+  /**
+   * @return the offset just past the last byte of the partition
+   */
+  public long getEnd() {
+    return end;
+  }
+
+}
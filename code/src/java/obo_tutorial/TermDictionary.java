@@ -0,0 +1,198 @@
+package obo_tutorial;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
+
+/**
+ * A dictionary of terms (usually CURIEs) that encodes each distinct term
+ * once as an int ID, so that the same String, expanded IRI,
+ * and Jena Node can be reused every time the term appears in a table.
+ * IRIs and Nodes are only computed when first asked for.
+ * A dictionary can be given a maximum size, to bound memory
+ * when streaming tables with many distinct values;
+ * once it is full, new terms are expanded but not stored.
+ * All methods are synchronized, so a dictionary can be shared by threads.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class TermDictionary {
+  /**
+   * The prefixes used to expand terms to IRIs, or null.
+   */
+  private final PrefixTrie prefixes;
+
+  /**
+   * The maximum number of terms to store.
+   */
+  private final int maxSize;
+
+  /**
+   * A map from each term to its ID.
+   */
+  private final Map<String,Integer> ids = new HashMap<String,Integer>();
+
+  /**
+   * The term for each ID.
+   */
+  private final List<String> terms = new ArrayList<String>();
+
+  /**
+   * The expanded IRI for each ID, or null if not yet expanded.
+   */
+  private final List<String> iris = new ArrayList<String>();
+
+  /**
+   * The Jena Node for each ID, or null if not yet created.
+   */
+  private final List<Node> nodes = new ArrayList<Node>();
+
+  /**
+   * Create a dictionary that does not expand terms.
+   */
+  public TermDictionary() {
+    this(null);
+  }
+
+  /**
+   * Create a dictionary that expands terms using the given prefixes.
+   * Later changes to the prefixes are not seen by the dictionary.
+   *
+   * @param prefixes the prefixes to expand terms with, or null
+   */
+  public TermDictionary(PrefixMapping prefixes) {
+    this(prefixes, Integer.MAX_VALUE);
+  }
+
+  /**
+   * Create a dictionary that expands terms using the given prefixes
+   * and stores at most the given number of terms.
+   *
+   * @param prefixes the prefixes to expand terms with, or null
+   * @param maxSize the maximum number of terms to store
+   */
+  public TermDictionary(PrefixMapping prefixes, int maxSize) {
+    if(prefixes == null) {
+      this.prefixes = null;
+    } else {
+      this.prefixes = new PrefixTrie(prefixes.getNsPrefixMap());
+    }
+    this.maxSize = maxSize;
+  }
+
+  /**
+   * Get the ID for a term, adding the term if it is new.
+   *
+   * @param term the term to encode
+   * @return the ID of the term, or -1 if it is new and the dictionary is full
+   */
+  public synchronized int encode(String term) {
+    Integer id = ids.get(term);
+    if(id != null) {
+      return id;
+    }
+    if(terms.size() >= maxSize) {
+      return -1;
+    }
+    id = terms.size();
+    ids.put(term, id);
+    terms.add(term);
+    iris.add(null);
+    nodes.add(null);
+    return id;
+  }
+
+  /**
+   * Get the number of distinct terms.
+   *
+   * @return the number of terms
+   */
+  public synchronized int size() {
+    return terms.size();
+  }
+
+  /**
+   * Get the term for an ID.
+   *
+   * @param id the ID of the term
+   * @return the term string
+   */
+  public synchronized String getTerm(int id) {
+    return terms.get(id);
+  }
+
+  /**
+   * Get the expanded IRI for an ID.
+   * Terms that do not start with a known prefix are returned as they are.
+   *
+   * @param id the ID of the term
+   * @return the IRI string
+   */
+  public synchronized String getIRI(int id) {
+    String iri = iris.get(id);
+    if(iri == null) {
+      iri = expand(terms.get(id));
+      iris.set(id, iri);
+    }
+    return iri;
+  }
+
+  /**
+   * Get the Jena URI Node for an ID.
+   *
+   * @param id the ID of the term
+   * @return the Node for the expanded IRI
+   */
+  public synchronized Node getNode(int id) {
+    Node node = nodes.get(id);
+    if(node == null) {
+      node = NodeFactory.createURI(getIRI(id));
+      nodes.set(id, node);
+    }
+    return node;
+  }
+
+  /**
+   * Get the shared copy of a term, adding it if it is new.
+   *
+   * @param term the term to intern
+   * @return the equal term string held by the dictionary
+   */
+  public synchronized String intern(String term) {
+    int id = encode(term);
+    if(id < 0) {
+      return term;
+    }
+    return getTerm(id);
+  }
+
+  /**
+   * Get the shared Jena URI Node for a term, adding it if it is new.
+   *
+   * @param term the term to look up
+   * @return the Node for the expanded IRI
+   */
+  public synchronized Node getNode(String term) {
+    int id = encode(term);
+    if(id < 0) {
+      return NodeFactory.createURI(expand(term));
+    }
+    return getNode(id);
+  }
+
+  /**
+   * Expand a term to an IRI using the prefixes, if any.
+   */
+  private String expand(String term) {
+    if(prefixes == null) {
+      return term;
+    }
+    return prefixes.expand(term);
+  }
+
+}
@@ -0,0 +1,343 @@
+package obo_tutorial;
+
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.Charset;
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ * A read-only map from terms to CURIEs backed by a memory-mapped
+ * binary index file, so that large term mappings can be used
+ * without parsing them or holding them on the heap.
+ * The index is compiled from a term mapping CSV file
+ * (see TermMapper.readTermMap).
+ *
+ * The file is a hash table with open addressing:
+ *   - the 8 byte MAGIC string
+ *   - the number of entries and the number of slots (ints)
+ *   - one int per slot: the file offset of an entry, or 0 if empty
+ *   - the entries: key length, UTF-8 key, value length, UTF-8 value
+ * Files are limited to 2GB.
+ *
+ * Lookups only read from the mapped buffer,
+ * so one index can be shared by many threads.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class TermIndex extends AbstractMap<String,String> {
+  /**
+   * The first bytes of every index file.
+   */
+  public static final String MAGIC = "OBOTERM1";
+
+  /**
+   * Strings are stored as UTF-8.
+   */
+  private static final Charset UTF8 = Charset.forName("UTF-8");
+
+  /**
+   * The size of the header: MAGIC, entry count, slot count.
+   */
+  private static final int HEADER_SIZE = 16;
+
+  /**
+   * The mapped index file.
+   */
+  private final MappedByteBuffer buffer;
+
+  /**
+   * The number of entries.
+   */
+  private final int size;
+
+  /**
+   * The number of slots, a power of two.
+   */
+  private final int slots;
+
+  /**
+   * Given a term mapping CSV file and an index file path,
+   * compile the terms into the index file.
+   *
+   * @param args Two strings:
+   *   1. the path of the term mapping file
+   *   2. the path of the index (output) file
+   */
+  public static void main(String[] args) throws IOException {
+    compile(args[0], args[1]);
+  }
+
+  /**
+   * Given a term mapping CSV file and an index file path,
+   * compile the terms into the index file.
+   *
+   * @param args Two strings:
+   *   1. the path of the term mapping file
+   *   2. the path of the index (output) file
+   * @return the number of terms in the index
+   * @throws IOException if the index cannot be written
+   */
+  public static int compile(List<String> args) throws IOException {
+    return compile(args.get(0), args.get(1));
+  }
+
+  /**
+   * Given a term mapping CSV file and an index file path,
+   * compile the terms into the index file.
+   *
+   * @param termMapPath the path of the term mapping file
+   * @param indexPath the path of the index (output) file
+   * @return the number of terms in the index
+   * @throws IOException if the index cannot be written
+   */
+  public static int compile(String termMapPath, String indexPath)
+      throws IOException {
+    Map<String,String> termMap = TermMapper.readTermMap(termMapPath);
+    write(termMap, indexPath);
+    return termMap.size();
+  }
+
+  /**
+   * Given a map from terms to CURIE strings and an index file path,
+   * write the map to the index file.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param indexPath the path of the index (output) file
+   * @throws IOException if the index cannot be written
+   */
+  public static void write(Map<String,String> termMap, String indexPath)
+      throws IOException {
+    // twice as many slots as entries keeps probe sequences short
+    int slots = 1;
+    while(slots < termMap.size() * 2) {
+      slots = slots * 2;
+    }
+
+    // lay out the entries and fill the slot table
+    int count = termMap.size();
+    byte[][] keys = new byte[count][];
+    byte[][] values = new byte[count][];
+    int[] table = new int[slots];
+    long offset = HEADER_SIZE + 4L * slots;
+    int i = 0;
+    for(Map.Entry<String,String> entry: termMap.entrySet()) {
+      keys[i] = entry.getKey().getBytes(UTF8);
+      values[i] = entry.getValue().getBytes(UTF8);
+      int slot = hash(keys[i]) & (slots - 1);
+      while(table[slot] != 0) {
+        slot = (slot + 1) & (slots - 1);
+      }
+      if(offset > Integer.MAX_VALUE) {
+        throw new IOException("Term index would be larger than 2GB");
+      }
+      table[slot] = (int) offset;
+      offset = offset + 8 + keys[i].length + values[i].length;
+      i = i + 1;
+    }
+
+    DataOutputStream output = new DataOutputStream(
+        new BufferedOutputStream(new FileOutputStream(indexPath)));
+    try {
+      output.write(MAGIC.getBytes(UTF8));
+      output.writeInt(count);
+      output.writeInt(slots);
+      for(int slot: table) {
+        output.writeInt(slot);
+      }
+      for(i = 0; i < count; i++) {
+        output.writeInt(keys[i].length);
+        output.write(keys[i]);
+        output.writeInt(values[i].length);
+        output.write(values[i]);
+      }
+    } finally {
+      output.close();
+    }
+  }
+
+  /**
+   * Check whether a file starts with the index MAGIC string.
+   *
+   * @param path the path of the file to check
+   * @return true if the file is a term index
+   */
+  public static boolean isIndex(String path) {
+    byte[] magic = new byte[MAGIC.length()];
+    try {
+      DataInputStream input = new DataInputStream(new FileInputStream(path));
+      try {
+        input.readFully(magic);
+      } finally {
+        input.close();
+      }
+    } catch (IOException e) {
+      return false;
+    }
+    return Arrays.equals(magic, MAGIC.getBytes(UTF8));
+  }
+
+  /**
+   * Open an index file by mapping it into memory.
+   * Nothing is read until the first lookup.
+   *
+   * @param indexPath the path of the index file
+   * @throws IOException if the file cannot be mapped or is not an index
+   */
+  public TermIndex(String indexPath) throws IOException {
+    RandomAccessFile file = new RandomAccessFile(new File(indexPath), "r");
+    try {
+      FileChannel channel = file.getChannel();
+      if(channel.size() > Integer.MAX_VALUE) {
+        throw new IOException("Term index is larger than 2GB: " + indexPath);
+      }
+      buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+    } finally {
+      file.close();
+    }
+    for(int i = 0; i < MAGIC.length(); i++) {
+      if(buffer.get(i) != MAGIC.charAt(i)) {
+        throw new IOException("Not a term index file: " + indexPath);
+      }
+    }
+    size = buffer.getInt(8);
+    slots = buffer.getInt(12);
+  }
+
+  /**
+   * Get the number of terms in the index.
+   *
+   * @return the number of terms
+   */
+  public int size() {
+    return size;
+  }
+
+  /**
+   * Check whether a term is in the index.
+   *
+   * @param key the term to look for
+   * @return true if the term is in the index
+   */
+  public boolean containsKey(Object key) {
+    return get(key) != null;
+  }
+
+  /**
+   * Look up the CURIE for a term.
+   *
+   * @param key the term to look for
+   * @return the CURIE string, or null if the term is not in the index
+   */
+  public String get(Object key) {
+    if(!(key instanceof String) || size == 0) {
+      return null;
+    }
+    byte[] bytes = ((String) key).getBytes(UTF8);
+    int slot = hash(bytes) & (slots - 1);
+    while(true) {
+      int offset = buffer.getInt(HEADER_SIZE + 4 * slot);
+      if(offset == 0) {
+        return null;
+      }
+      if(keyEquals(offset, bytes)) {
+        return readString(offset + 4 + bytes.length);
+      }
+      slot = (slot + 1) & (slots - 1);
+    }
+  }
+
+  /**
+   * Get a view of the entries in the index,
+   * which are read from the file as they are iterated.
+   *
+   * @return the set of entries
+   */
+  public Set<Map.Entry<String,String>> entrySet() {
+    return new AbstractSet<Map.Entry<String,String>>() {
+      public int size() {
+        return size;
+      }
+
+      public Iterator<Map.Entry<String,String>> iterator() {
+        return new Iterator<Map.Entry<String,String>>() {
+          private int offset = HEADER_SIZE + 4 * slots;
+          private int remaining = size;
+
+          public boolean hasNext() {
+            return remaining > 0;
+          }
+
+          public Map.Entry<String,String> next() {
+            if(remaining == 0) {
+              throw new NoSuchElementException();
+            }
+            String key = readString(offset);
+            offset = offset + 4 + buffer.getInt(offset);
+            String value = readString(offset);
+            offset = offset + 4 + buffer.getInt(offset);
+            remaining = remaining - 1;
+            return new AbstractMap.SimpleImmutableEntry<String,String>(
+                key, value);
+          }
+
+          public void remove() {
+            throw new UnsupportedOperationException();
+          }
+        };
+      }
+    };
+  }
+
+  /**
+   * Compare the key of the entry at an offset with some bytes.
+   */
+  private boolean keyEquals(int offset, byte[] bytes) {
+    if(buffer.getInt(offset) != bytes.length) {
+      return false;
+    }
+    for(int i = 0; i < bytes.length; i++) {
+      if(buffer.get(offset + 4 + i) != bytes[i]) {
+        return false;
+      }
+    }
+    return true;
+  }
+
+  /**
+   * Read a length-prefixed UTF-8 string at an offset.
+   */
+  private String readString(int offset) {
+    byte[] bytes = new byte[buffer.getInt(offset)];
+    for(int i = 0; i < bytes.length; i++) {
+      bytes[i] = buffer.get(offset + 4 + i);
+    }
+    return new String(bytes, UTF8);
+  }
+
+  /**
+   * The 32-bit FNV-1a hash of some bytes.
+   */
+  private static int hash(byte[] bytes) {
+    int hash = 0x811c9dc5;
+    for(byte b: bytes) {
+      hash = (hash ^ (b & 0xff)) * 0x01000193;
+    }
+    return hash;
+  }
+
+}
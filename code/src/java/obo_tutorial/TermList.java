@@ -0,0 +1,190 @@
+package obo_tutorial;
+
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Set;
+import java.util.HashSet;
+
+import org.semanticweb.owlapi.model.IRI;
+
+/**
+ * The directives of a term list file for the Extractor,
+ * read in a single pass.
+ * Each line starts with an IRI, optionally followed by a space
+ * and a comment such as a label:
+ *
+ *   http://purl.obolibrary.org/obo/UBERON_0002048 lung
+ *
+ * A line starting with "strip " and an IRI strips the anonymous
+ * super classes of that class before extraction,
+ * and a line starting with "remove " and an IRI removes that class
+ * from the extracted module.
+ * Other lines are ignored.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class TermList {
+  /**
+   * The prefix of lines that strip anonymous super classes.
+   */
+  public static final String STRIP = "strip ";
+
+  /**
+   * The prefix of lines that remove classes from the module.
+   */
+  public static final String REMOVE = "remove ";
+
+  /**
+   * The IRIs to include in the module.
+   */
+  private final Set<IRI> included = new HashSet<IRI>();
+
+  /**
+   * The IRIs of classes to strip anonymous super classes from.
+   */
+  private final Set<IRI> stripped = new HashSet<IRI>();
+
+  /**
+   * The IRIs of classes to remove from the module.
+   */
+  private final Set<IRI> removed = new HashSet<IRI>();
+
+  /**
+   * Given a term list file, read all its directives.
+   *
+   * @param file the term list file
+   * @return the term list
+   * @throws IOException if the file cannot be read
+   */
+  public static TermList read(File file) throws IOException {
+    TermList list = new TermList();
+    BufferedReader reader = new BufferedReader(
+        new InputStreamReader(new FileInputStream(file), "UTF-8"));
+    try {
+      String line;
+      while((line = reader.readLine()) != null) {
+        list.add(line);
+      }
+    } finally {
+      reader.close();
+    }
+    return list;
+  }
+
+  /**
+   * Write the directives of this list to a file, in sorted order,
+   * without comments.
+   *
+   * @param file the file to write
+   * @throws IOException if the file cannot be written
+   */
+  public void write(File file) throws IOException {
+    Writer writer = new OutputStreamWriter(
+        new FileOutputStream(file), "UTF-8");
+    try {
+      write(writer, "", included);
+      write(writer, STRIP, stripped);
+      write(writer, REMOVE, removed);
+    } finally {
+      writer.close();
+    }
+  }
+
+  /**
+   * Given a writer, a prefix, and a set of IRIs,
+   * write one line for each IRI, in sorted order.
+   *
+   * @param writer the writer to write to
+   * @param prefix the prefix of each line, which may be empty
+   * @param iris the IRIs to write
+   * @throws IOException if the lines cannot be written
+   */
+  private static void write(Writer writer, String prefix, Set<IRI> iris)
+      throws IOException {
+    List<String> lines = new ArrayList<String>();
+    for(IRI iri: iris) {
+      lines.add(prefix + iri.toString());
+    }
+    Collections.sort(lines);
+    for(String line: lines) {
+      writer.write(line);
+      writer.write("\n");
+    }
+  }
+
+  /**
+   * Given a line of a term list, add its directive to this list.
+   *
+   * @param line the line
+   */
+  public void add(String line) {
+    line = line.trim();
+    String iri = parseIRI(line, STRIP);
+    if(iri != null) {
+      stripped.add(IRI.create(iri));
+      return;
+    }
+    iri = parseIRI(line, REMOVE);
+    if(iri != null) {
+      removed.add(IRI.create(iri));
+      return;
+    }
+    iri = parseIRI(line, "");
+    if(iri != null) {
+      included.add(IRI.create(iri));
+    }
+  }
+
+  /**
+   * Given a trimmed line and a prefix,
+   * return the IRI that follows the prefix,
+   * up to the first space or tab or the end of the line.
+   *
+   * @param line the trimmed line
+   * @param prefix the prefix to match, which may be empty
+   * @return the IRI string, or null if the line does not match
+   */
+  public static String parseIRI(String line, String prefix) {
+    if(!line.startsWith(prefix + "http")) {
+      return null;
+    }
+    int start = prefix.length();
+    int end = start;
+    while(end < line.length() && line.charAt(end) != ' ' &&
+        line.charAt(end) != '\t') {
+      end++;
+    }
+    return line.substring(start, end);
+  }
+
+  /**
+   * @return the IRIs to include in the module
+   */
+  public Set<IRI> getIncluded() {
+    return included;
+  }
+
+  /**
+   * @return the IRIs of classes to strip anonymous super classes from
+   */
+  public Set<IRI> getStripped() {
+    return stripped;
+  }
+
+  /**
+   * @return the IRIs of classes to remove from the module
+   */
+  public Set<IRI> getRemoved() {
+    return removed;
+  }
+
+}
@@ -1,15 +1,22 @@
 package obo_tutorial;
 
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
 import java.io.FileReader;
 import java.io.FileWriter;
 import java.io.IOException;
+import java.util.ArrayDeque;
 import java.util.Arrays;
+import java.util.Deque;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
-import java.util.Date;
-import java.text.SimpleDateFormat;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
@@ -23,6 +30,11 @@ import au.com.bytecode.opencsv.CSVWriter;
  * @author <a href="mailto:james@overton.ca">James A. Overton</a>
  */
 public class TermMapper {
+  /**
+   * The number of rows in each chunk when mapping in parallel.
+   */
+  public static final int DEFAULT_CHUNK_SIZE = 1000;
+
   /**
    * Given a CSV file path,
    * with terms in the first column and CURIEs in the fourth column,
@@ -52,59 +64,298 @@ public class TermMapper {
    *   1. the path of the term mapping file
    *   2. the path of the input file to map
    *   3. the path of the output file
-   * @return the result of applying the map to the input data
+   * @return the number of data rows mapped
    */
-  public static List<List<String>> map(List<String> args) {
+  public static int map(List<String> args) {
     return map(args.get(0), args.get(1), args.get(2));
   }
 
   /**
    * Given a CSV file path,
    * with terms in the first column and CURIEs in the fourth column,
-   * load an input CSV file from a path,
+   * stream an input CSV file from a path one row at a time,
    * apply the mapping to each cell,
-   * and write an output CSV file to a path.
+   * and write each row to an output CSV file as soon as it is mapped.
+   * Only the term map is held in memory.
    * The first row of the input data (the header row) is not mapped.
    *
    * @param termMapPath the path to the term mapping file
    * @param inputPath the path to the input file to map
    * @param outputPath the path of the output file
-   * @return the result of applying the map to the input data
+   * @return the number of data rows mapped
    */
-  public static List<List<String>> map(String termMapPath, String inputPath,
+  public static int map(String termMapPath, String inputPath,
       String outputPath) {
+    return map(termMapPath, inputPath, outputPath, 1,
+        DateNormalizer.defaultColumns());
+  }
+
+  /**
+   * Given a CSV file path,
+   * with terms in the first column and CURIEs in the fourth column,
+   * stream an input CSV file from a path in chunks of rows,
+   * apply the mapping to each chunk on a pool of threads,
+   * and write the mapped rows to an output CSV file in their original order.
+   * The first row of the input data (the header row) is not mapped.
+   *
+   * @param termMapPath the path to the term mapping file
+   * @param inputPath the path to the input file to map
+   * @param outputPath the path of the output file
+   * @param threads the number of threads to map rows with
+   * @param dateColumns a map from column header to datetime normalizer
+   * @return the number of data rows mapped
+   */
+  public static int map(String termMapPath, String inputPath,
+      String outputPath, int threads,
+      Map<String,DateNormalizer> dateColumns) {
+    return map(loadTermMap(termMapPath), inputPath, outputPath, threads,
+        dateColumns);
+  }
+
+  /**
+   * Given a map from terms to CURIE strings,
+   * stream an input CSV file from a path in chunks of rows,
+   * apply the mapping to each chunk on a pool of threads,
+   * and write the mapped rows to an output CSV file in their original order.
+   * The first row of the input data (the header row) is not mapped.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param inputPath the path to the input file to map
+   * @param outputPath the path of the output file
+   * @param threads the number of threads to map rows with
+   * @param dateColumns a map from column header to datetime normalizer
+   * @return the number of data rows mapped
+   */
+  public static int map(Map<String,String> termMap, String inputPath,
+      String outputPath, int threads,
+      Map<String,DateNormalizer> dateColumns) {
+    int count = 0;
+
+    CSVReader reader = null;
+    try {
+      reader = new CSVReader(new BufferedReader(new FileReader(inputPath)));
+    } catch (IOException e) {
+      System.out.println("Could not read assay CSV file at " + inputPath);
+      return count;
+    }
+
+    try {
+      CSVWriter writer = new CSVWriter(
+          new BufferedWriter(new FileWriter(outputPath)));
+      try {
+        count = map(termMap, reader, writer, dateColumns,
+            threads, DEFAULT_CHUNK_SIZE);
+      } finally {
+        writer.close();
+      }
+    } catch (IOException e) {
+      System.out.println("Could not write assay CSV file to " + outputPath);
+    } finally {
+      try {
+        reader.close();
+      } catch (IOException e) {
+        // nothing left to do
+      }
+    }
+
+    return count;
+  }
+
+  /**
+   * Given the path of either a term mapping CSV file
+   * or a term index compiled from one (see TermIndex),
+   * return a map from terms to CURIE strings.
+   * An index is memory-mapped rather than read onto the heap.
+   *
+   * @param termMapPath the path to the term mapping file or index
+   * @return a map from term strings to CURIE strings
+   */
+  public static Map<String,String> loadTermMap(String termMapPath) {
+    if(TermIndex.isIndex(termMapPath)) {
+      try {
+        return new TermIndex(termMapPath);
+      } catch (IOException e) {
+        System.out.println("Could not open term index at " + termMapPath);
+        return new HashMap<String,String>();
+      }
+    }
+    return readTermMap(termMapPath);
+  }
+
+  /**
+   * Given a CSV file path,
+   * with terms in the first column and CURIEs in the fourth column,
+   * read the term mapping into a map from terms to CURIE strings.
+   * The first row (the header row) is skipped,
+   * as are rows with an empty term or CURIE.
+   *
+   * @param termMapPath the path to the term mapping file
+   * @return a map from term strings to CURIE strings
+   */
+  public static Map<String,String> readTermMap(String termMapPath) {
     Map<String,String> termMap = new HashMap<String,String>();
-    List<List<String>> rows = new ArrayList<List<String>>();
+    TermDictionary dictionary = new TermDictionary();
 
     // read the term mapping CSV file
     try {
       CSVReader reader = new CSVReader(new FileReader(termMapPath));
-      List<String[]> termRows = reader.readAll();
-      reader.close();
-      termRows.remove(0);
-
-      for(String[] termRow: termRows) {
-        if(!termRow[0].equals("") && !termRow[3].equals("")) {
-          termMap.put(termRow[0], termRow[3]);
+      String[] termRow = reader.readNext(); // skip the header row
+      while((termRow = reader.readNext()) != null) {
+        if(termRow.length > 3 &&
+           !termRow[0].equals("") && !termRow[3].equals("")) {
+          termMap.put(termRow[0], dictionary.intern(termRow[3]));
         }
       }
+      reader.close();
     } catch (IOException e) {
       System.out.println("Could not read assay CSV file at " + termMapPath);
     }
 
-    // read the input CSV file
+    return termMap;
+  }
+
+  /**
+   * Given a map from terms to CURIE strings,
+   * a CSV reader for the input data,
+   * a CSV writer for the output data,
+   * and a map from datetime column headers to normalizers,
+   * read one row at a time, apply the mapping to each cell,
+   * and write the mapped row before reading the next one.
+   * The first row of the input data (the header row) is not mapped.
+   * The reader and writer are not closed.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param reader the CSV reader to read rows from
+   * @param writer the CSV writer to write mapped rows to
+   * @param dateColumns a map from column header to datetime normalizer
+   * @return the number of data rows mapped
+   * @throws IOException if the input cannot be read
+   */
+  private static int mapRows(Map<String,String> termMap, CSVReader reader,
+      CSVWriter writer, Map<String,DateNormalizer> dateColumns)
+      throws IOException {
+    String[] headerRow = reader.readNext();
+    if(headerRow == null) {
+      return 0;
+    }
+    ColumnPlan plan = new ColumnPlan(Arrays.asList(headerRow), dateColumns);
+    writer.writeNext(headerRow);
+
+    // read, map, and write one row at a time
+    int count = 0;
+    String[] row;
+    while((row = reader.readNext()) != null) {
+      writer.writeNext(plan.map(termMap, row));
+      count = count + 1;
+    }
+    writer.flush();
+
+    return count;
+  }
+
+  /**
+   * Given a map from terms to CURIE strings,
+   * a CSV reader for the input data,
+   * a CSV writer for the output data,
+   * a map from datetime column headers to normalizers,
+   * a number of threads, and a chunk size,
+   * read the input in chunks of rows,
+   * map each chunk on a pool of threads,
+   * and write the mapped chunks in their original order.
+   * At most two chunks per thread are held in memory at once.
+   * With a single thread this is the same as streaming one row at a time.
+   * The first row of the input data (the header row) is not mapped.
+   * The reader and writer are not closed.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param reader the CSV reader to read rows from
+   * @param writer the CSV writer to write mapped rows to
+   * @param dateColumns a map from column header to datetime normalizer
+   * @param threads the number of threads to map rows with
+   * @param chunkSize the number of rows in each chunk
+   * @return the number of data rows mapped
+   * @throws IOException if the input cannot be read or mapping fails
+   */
+  public static int map(final Map<String,String> termMap, CSVReader reader,
+      CSVWriter writer, Map<String,DateNormalizer> dateColumns,
+      int threads, int chunkSize) throws IOException {
+    if(threads < 2) {
+      return mapRows(termMap, reader, writer, dateColumns);
+    }
+
+    String[] headerRow = reader.readNext();
+    if(headerRow == null) {
+      return 0;
+    }
+    final ColumnPlan plan =
+      new ColumnPlan(Arrays.asList(headerRow), dateColumns);
+    writer.writeNext(headerRow);
+
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    Deque<Future<List<String[]>>> pending =
+      new ArrayDeque<Future<List<String[]>>>();
+    int count = 0;
     try {
-      CSVReader reader = new CSVReader(new FileReader(inputPath));
-      List<String[]> dataRows = reader.readAll();
-      reader.close();
-      for(String[] dataRow: dataRows) {
-        rows.add(Arrays.asList(dataRow));
+      boolean done = false;
+      while(!done || !pending.isEmpty()) {
+        // read and submit chunks until enough are in flight
+        while(!done && pending.size() < threads * 2) {
+          final List<String[]> chunk = new ArrayList<String[]>(chunkSize);
+          String[] row;
+          while(chunk.size() < chunkSize &&
+                (row = reader.readNext()) != null) {
+            chunk.add(row);
+          }
+          if(chunk.size() < chunkSize) {
+            done = true;
+          }
+          if(chunk.isEmpty()) {
+            break;
+          }
+          pending.add(pool.submit(new Callable<List<String[]>>() {
+            public List<String[]> call() {
+              return mapChunk(termMap, plan, chunk);
+            }
+          }));
+        }
+
+        // write the oldest chunk
+        if(!pending.isEmpty()) {
+          for(String[] result: pending.remove().get()) {
+            writer.writeNext(result);
+            count = count + 1;
+          }
+        }
       }
-    } catch (IOException e) {
-      System.out.println("Could not read assay CSV file at " + inputPath);
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted while mapping rows", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not map rows", e.getCause());
+    } finally {
+      pool.shutdownNow();
     }
+    writer.flush();
+
+    return count;
+  }
 
-    return map(termMap, rows, outputPath);
+  /**
+   * Given a map from terms to CURIE strings,
+   * the compiled column plan, and a chunk of input rows,
+   * apply the mapping to each row of the chunk.
+   *
+   * @param termMap a map from term strings to CURIE strings
+   * @param plan the column plan compiled from the header row
+   * @param chunk the rows of input data to map
+   * @return the mapped rows
+   */
+  public static List<String[]> mapChunk(Map<String,String> termMap,
+      ColumnPlan plan, List<String[]> chunk) {
+    List<String[]> results = new ArrayList<String[]>(chunk.size());
+    for(String[] row: chunk) {
+      results.add(plan.map(termMap, row));
+    }
+    return results;
   }
 
   /**
@@ -113,6 +364,7 @@ public class TermMapper {
    * and a path to the output file,
    * apply the mapping to each input data string,
    * and write to the output file.
+   * Repeated values in the results share a single String.
    * The first row of the input data (the header row) is not mapped.
    *
    * @param termMap a map from term strings to CURIE strings
@@ -124,38 +376,14 @@ public class TermMapper {
       List<List<String>> inputData, String outputPath) {
     List<List<String>> results = new ArrayList<List<String>>();
     List<String> headers = inputData.remove(0);
-    // 1/1/14 10:21 AM
-    SimpleDateFormat crazyFormat = new SimpleDateFormat("d/M/y hh:mm a");
-    SimpleDateFormat saneFormat = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ");
+    ColumnPlan plan = new ColumnPlan(headers,
+        DateNormalizer.defaultColumns(), new TermDictionary());
 
     // iterate over rows
     for(List<String> row: inputData) {
-      List<String> result = new ArrayList<String>();
-      int column = 0;
-      for(String cell: row) {
-
-        // do the mapping!
-        String header = headers.get(column);
-        if(termMap.containsKey(cell)) {         // term mapping
-          result.add(termMap.get(cell));
-        } else if (header.equals("datetime")) { // datetime column
-          try {
-            Date date = crazyFormat.parse(cell);
-            result.add(saneFormat.format(date));
-          } catch(Exception e) {
-            result.add(cell);
-          }
-        } else if (header.equals("subject")) {  // subject column
-          result.add("tutorial:subject-" + cell);
-        } else if (header.equals("group")) {    // group column
-          result.add("tutorial:group-" + cell);
-        } else {                                // do nothing
-          result.add(cell);
-        }
-        column = column + 1;
-
-      }
-      results.add(result);
+      String[] cells = row.toArray(new String[0]);
+      results.add(Arrays.asList(
+            plan.map(termMap, cells)));
     }
 
     // write
@@ -174,4 +402,3 @@ public class TermMapper {
   }
 
 }
-
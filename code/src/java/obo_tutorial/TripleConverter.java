@@ -1,21 +1,35 @@
 package obo_tutorial;
 
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
 import java.io.FileReader;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.channels.FileChannel;
 import java.util.Arrays;
 import java.util.List;
 import java.util.ArrayList;
 import java.util.Map;
 import java.util.HashMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
 
 import au.com.bytecode.opencsv.CSVReader;
 import au.com.bytecode.opencsv.CSVWriter;
 
 import org.apache.jena.riot.RDFDataMgr;
 import org.apache.jena.riot.RDFFormat;
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFLib;
 import com.hp.hpl.jena.rdf.model.Model;
 import com.hp.hpl.jena.rdf.model.ModelFactory;
+import com.hp.hpl.jena.shared.PrefixMapping;
 
 /**
  * Load a CSV and do a "naive" conversion to triples
@@ -24,6 +38,11 @@ import com.hp.hpl.jena.rdf.model.ModelFactory;
  * @author <a href="mailto:james@overton.ca">James A. Overton</a>
  */
 public class TripleConverter {
+  /**
+   * The maximum number of distinct terms to keep when streaming.
+   */
+  public static final int STREAMING_DICTIONARY_SIZE = 100000;
+
   /**
    * Given a path to a Turtle file with prefixes to use,
    * a path to an input CSV file with a header row,
@@ -74,13 +93,129 @@ public class TripleConverter {
    */
   public static Model convert(String prefixPath, String inputPath,
       String outputPath) {
-    List<List<String>> inputData = new ArrayList<List<String>>();
+    return convert(prefixPath, inputPath, outputPath,
+        RDFOutput.TURTLE_PRETTY, 1, false);
+  }
 
-    // read the prefixes
+  /**
+   * Given the path of a Turtle file with prefixes to use,
+   * return its prefixes.
+   *
+   * @param prefixPath the path of a Turtle file to use for prefixes
+   * @return a map from prefix to IRI string
+   */
+  public static Map<String,String> loadPrefixMap(String prefixPath) {
     Model m = RDFDataMgr.loadModel(prefixPath);
-    Map<String,String> prefixMap = m.getNsPrefixMap();
+    return m.getNsPrefixMap();
+  }
+
+  /**
+   * Given a path to a Turtle file with prefixes to use,
+   * a path to an input CSV file with a header row,
+   * an output file path, an output format,
+   * a number of threads, and whether to keep the shards,
+   * convert the table to triples in a very simple way,
+   * and save to the output file.
+   * With more than one thread and N-Triples output, compressed or not,
+   * the table is converted in partitions on a pool of threads,
+   * each to its own shard file.
+   * Unless keepShards is true the shards are then concatenated
+   * to the output file and deleted.
+   * Concatenated gzip shards are a valid gzip file.
+   * Other formats use a single thread.
+   * Streaming formats are written as each row is read,
+   * so memory use does not grow with the size of the table;
+   * pretty Turtle needs all the triples in memory first.
+   * Only pretty Turtle returns a Model:
+   * the triples of streamed and partitioned output are not kept.
+   * The first row of the input data must be a header row.
+   *
+   * @param prefixPath the path of a Turtle file to use for prefixes
+   * @param inputPath the path of the input CSV file
+   * @param outputPath the path of the output RDF file
+   * @param format the output format (see RDFOutput)
+   * @param threads the number of threads to convert rows with
+   * @param keepShards true to leave one N-Triples file per partition
+   *   instead of concatenating them into the output file
+   * @return a Jena Model containing all the triples,
+   *   or null if the format was streamed or converted in partitions
+   */
+  public static Model convert(String prefixPath, String inputPath,
+      String outputPath, String format, int threads, boolean keepShards) {
+    return convert(loadPrefixMap(prefixPath), inputPath, outputPath, format,
+        threads, keepShards);
+  }
+
+  /**
+   * Given the prefixes to use,
+   * a path to an input CSV file with a header row,
+   * an output file path, an output format,
+   * a number of threads, and whether to keep the shards,
+   * convert the table to triples in a very simple way,
+   * and save to the output file.
+   * See the path-based convert() for how formats, threads,
+   * and shards are used.
+   *
+   * @param prefixMap the prefixes to use
+   * @param inputPath the path of the input CSV file
+   * @param outputPath the path of the output RDF file
+   * @param format the output format (see RDFOutput)
+   * @param threads the number of threads to convert rows with
+   * @param keepShards true to leave one N-Triples file per partition
+   *   instead of concatenating them into the output file
+   * @return a Jena Model containing all the triples,
+   *   or null if the format was streamed or converted in partitions
+   */
+  public static Model convert(Map<String,String> prefixMap, String inputPath,
+      String outputPath, String format, int threads, boolean keepShards) {
+    // convert N-Triples in partitions on a pool of threads
+    if(threads >= 2 && RDFOutput.isNTriples(format)) {
+      try {
+        List<String> shardPaths = convertPartitions(prefixMap, inputPath,
+            outputPath, format, threads);
+        if(!keepShards) {
+          concatenate(shardPaths, outputPath);
+        }
+      } catch (IOException e) {
+        System.out.println("Could not convert input CSV file at " +
+            inputPath + " to " + outputPath);
+      }
+      return null;
+    }
+
+    // stream the input CSV file straight to the output file
+    if(RDFOutput.isStreaming(format)) {
+      try {
+        CSVReader reader = new CSVReader(
+            new BufferedReader(new FileReader(inputPath)));
+        boolean finished = false;
+        try {
+          OutputStream output = RDFOutput.open(outputPath, format);
+          try {
+            StreamRDF stream =
+              RDFOutput.createStream(output, format, prefixMap);
+            convert(prefixMap, reader, stream);
+            stream.finish();
+            finished = true;
+          } finally {
+            output.close();
+            // do not leave a truncated output file
+            if(!finished) {
+              new File(outputPath).delete();
+            }
+          }
+        } finally {
+          reader.close();
+        }
+      } catch (IOException e) {
+        System.out.println("Could not convert input CSV file at " +
+            inputPath + " to " + outputPath);
+      }
+      return null;
+    }
 
     // read the input CSV file
+    List<List<String>> inputData = new ArrayList<List<String>>();
     try {
       CSVReader reader = new CSVReader(new FileReader(inputPath));
       List<String[]> dataRows = reader.readAll();
@@ -95,6 +230,182 @@ public class TripleConverter {
     return convert(prefixMap, inputData, outputPath);
   }
 
+  /**
+   * Given the prefixes to use, a path to an input CSV file with a header row,
+   * an output file path, an N-Triples format, and a number of threads,
+   * split the data rows into one partition per thread (see TablePartition),
+   * and convert each partition to its own N-Triples shard file
+   * named after the output path: output.part-0000, output.part-0001, ...
+   * Rows are first counted in every partition,
+   * so each partition starts at the right row number
+   * and the row IRIs are the same as for a single-threaded conversion.
+   * Quoted cells in the data rows must not contain line breaks.
+   *
+   * @param prefixMap the prefixes to use
+   * @param inputPath the path of the input CSV file
+   * @param outputPath the path that the shard paths are based on
+   * @param format an N-Triples format (see RDFOutput)
+   * @param threads the number of threads to convert rows with
+   * @return the paths of the shard files, in row order
+   * @throws IOException if the input cannot be read,
+   *   or a shard cannot be written
+   */
+  public static List<String> convertPartitions(
+      final Map<String,String> prefixMap, String inputPath,
+      String outputPath, final String format, int threads)
+      throws IOException {
+    List<String> shardPaths = new ArrayList<String>();
+
+    // read the header row
+    CSVReader headerReader = new CSVReader(new FileReader(inputPath));
+    String[] headerRow = headerReader.readNext();
+    headerReader.close();
+    if(headerRow == null) {
+      return shardPaths;
+    }
+    final List<String> headers = Arrays.asList(headerRow);
+
+    List<TablePartition> partitions = TablePartition.split(inputPath, threads);
+    ExecutorService pool = Executors.newFixedThreadPool(threads);
+    boolean finished = false;
+    try {
+      // count the rows in each partition
+      List<Future<Integer>> counts = new ArrayList<Future<Integer>>();
+      for(final TablePartition partition: partitions) {
+        counts.add(pool.submit(new Callable<Integer>() {
+          public Integer call() throws IOException {
+            return partition.countRows();
+          }
+        }));
+      }
+
+      // convert each partition, starting from its first row number
+      List<Future<Integer>> results = new ArrayList<Future<Integer>>();
+      int firstRow = 1;
+      for(int i = 0; i < partitions.size(); i++) {
+        final TablePartition partition = partitions.get(i);
+        final int rowNumber = firstRow;
+        final int rowCount = counts.get(i).get();
+        final String shardPath =
+          outputPath + String.format(".part-%04d", i);
+        shardPaths.add(shardPath);
+        results.add(pool.submit(new Callable<Integer>() {
+          public Integer call() throws IOException {
+            return convertPartition(prefixMap, headers, partition,
+                rowNumber, rowCount, shardPath, format);
+          }
+        }));
+        firstRow = firstRow + rowCount;
+      }
+      for(Future<Integer> result: results) {
+        result.get();
+      }
+      finished = true;
+    } catch (InterruptedException e) {
+      throw new IOException("Interrupted while converting rows", e);
+    } catch (ExecutionException e) {
+      throw new IOException("Could not convert rows", e.getCause());
+    } finally {
+      pool.shutdownNow();
+      // do not leave finished or half-written shards behind
+      if(!finished) {
+        try {
+          pool.awaitTermination(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+        }
+        for(String shardPath: shardPaths) {
+          new File(shardPath).delete();
+        }
+      }
+    }
+
+    return shardPaths;
+  }
+
+  /**
+   * Given the prefixes to use, the header row, a partition of the input,
+   * the row number of its first row, the number of rows it holds,
+   * a shard file path, and an N-Triples format,
+   * convert the rows of the partition to N-Triples in the shard file.
+   * Each partition has its own dictionary,
+   * so no locks are shared between threads.
+   *
+   * @param prefixMap the prefixes to use
+   * @param headers the header row of the input
+   * @param partition the partition of the input to convert
+   * @param firstRow the row number of the first row in the partition
+   * @param rowCount the number of rows in the partition
+   * @param shardPath the path of the N-Triples file to write
+   * @param format an N-Triples format (see RDFOutput)
+   * @return the number of rows converted
+   * @throws IOException if the input cannot be read,
+   *   or the shard cannot be written
+   */
+  public static int convertPartition(Map<String,String> prefixMap,
+      List<String> headers, TablePartition partition,
+      int firstRow, int rowCount, String shardPath, String format)
+      throws IOException {
+    PrefixMapping prefixes = PrefixMapping.Factory.create();
+    prefixes.setNsPrefixes(prefixMap);
+    TriplePlan plan = new TriplePlan(headers,
+        new TermDictionary(prefixes, STREAMING_DICTIONARY_SIZE));
+
+    CSVReader reader = partition.openReader();
+    OutputStream output = RDFOutput.open(shardPath, format);
+    StreamRDF stream = RDFOutput.createStream(output, format, null);
+    int count = 0;
+    try {
+      String[] row;
+      while(count < rowCount && (row = reader.readNext()) != null) {
+        plan.convert(firstRow + count, Arrays.asList(row), stream);
+        count = count + 1;
+      }
+      stream.finish();
+    } finally {
+      output.close();
+      reader.close();
+    }
+
+    return count;
+  }
+
+  /**
+   * Given a list of file paths and an output path,
+   * concatenate the files in order to the output file,
+   * then delete them.
+   *
+   * @param paths the paths of the files to concatenate
+   * @param outputPath the path of the output file
+   * @throws IOException if a file cannot be read or written
+   */
+  public static void concatenate(List<String> paths, String outputPath)
+      throws IOException {
+    FileOutputStream output = new FileOutputStream(outputPath);
+    try {
+      FileChannel target = output.getChannel();
+      for(String path: paths) {
+        FileInputStream input = new FileInputStream(path);
+        try {
+          FileChannel source = input.getChannel();
+          long position = 0;
+          long size = source.size();
+          while(position < size) {
+            position = position +
+              source.transferTo(position, size - position, target);
+          }
+        } finally {
+          input.close();
+        }
+      }
+    } finally {
+      output.close();
+    }
+    for(String path: paths) {
+      new File(path).delete();
+    }
+  }
+
   /**
    * Given a path to a Turtle file with prefixes to use,
    * a path to an input CSV file with a header row,
@@ -102,6 +413,7 @@ public class TripleConverter {
    * convert the table to triples in a very simple way,
    * and save to the output file.
    * The first row of the input data must be a header row.
+   * Each distinct cell value is expanded to a Node only once.
    *
    * @param prefixMap the prefixes to use
    * @param inputPath the path of the input CSV file
@@ -114,43 +426,13 @@ public class TripleConverter {
 
     Model m = ModelFactory.createDefaultModel();
     m.setNsPrefixes(prefixMap);
+    StreamRDF graph = StreamRDFLib.graph(m.getGraph());
+    TriplePlan plan = new TriplePlan(headers, new TermDictionary(m));
 
     // iterate over rows
     int rowNumber = 1;
     for(List<String> row: inputData) {
-      String rowIRI = m.expandPrefix("tutorial:row-" + rowNumber);
-      m.add(
-        m.createStatement(
-          m.createResource(rowIRI),
-          m.createProperty(m.expandPrefix("rdf:type")),
-          m.createResource(m.expandPrefix("tutorial:row"))));
-      int columnNumber = 0;
-
-      // convert row-column-cell to subject-predicate-object
-      for(String cell: row) {
-        String header = headers.get(columnNumber);
-        String headerIRI = m.expandPrefix("tutorial:column-" + header);
-        if(cell.length() == 0) {
-          // do nothing
-        } else if (header.equals("datetime") ||
-                   header.equals("comment")) {
-          // create a statement where the object is a literal
-          m.add(
-            m.createStatement(
-              m.createResource(rowIRI),
-              m.createProperty(headerIRI),
-              m.createLiteral(cell, null)));
-        } else {
-          // create a statement where the object is a URI
-          m.add(
-            m.createStatement(
-              m.createResource(rowIRI),
-              m.createProperty(headerIRI),
-              m.createResource(m.expandPrefix(cell))));
-        }
-        columnNumber = columnNumber + 1;
-
-      }
+      plan.convert(rowNumber, row, graph);
       rowNumber = rowNumber + 1;
     }
 
@@ -165,5 +447,40 @@ public class TripleConverter {
     return m;
   }
 
-}
+  /**
+   * Given the prefixes to use, a CSV reader with a header row,
+   * and a stream of RDF,
+   * read the table one row at a time, convert each row to triples,
+   * and send them to the stream before reading the next row.
+   * Only a bounded dictionary of repeated terms is kept in memory.
+   * The reader and stream are not closed or finished.
+   *
+   * @param prefixMap the prefixes to use
+   * @param reader the CSV reader to read rows from
+   * @param stream the stream to send triples to
+   * @return the number of rows converted
+   * @throws IOException if the input cannot be read
+   */
+  public static int convert(Map<String,String> prefixMap, CSVReader reader,
+      StreamRDF stream) throws IOException {
+    String[] headerRow = reader.readNext();
+    if(headerRow == null) {
+      return 0;
+    }
+    PrefixMapping prefixes = PrefixMapping.Factory.create();
+    prefixes.setNsPrefixes(prefixMap);
+    TriplePlan plan = new TriplePlan(Arrays.asList(headerRow),
+        new TermDictionary(prefixes, STREAMING_DICTIONARY_SIZE));
+
+    // read, convert, and write one row at a time
+    int rowNumber = 1;
+    String[] row;
+    while((row = reader.readNext()) != null) {
+      plan.convert(rowNumber, Arrays.asList(row), stream);
+      rowNumber = rowNumber + 1;
+    }
 
+    return rowNumber - 1;
+  }
+
+}
@@ -0,0 +1,105 @@
+package obo_tutorial;
+
+import java.util.List;
+
+import org.apache.jena.riot.system.StreamRDF;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.NodeFactory;
+import com.hp.hpl.jena.graph.Triple;
+
+/**
+ * A header row compiled for TripleConverter,
+ * with the predicate Node for each column and the constant Nodes
+ * resolved once, so that converting a row only expands its cells.
+ * A plan is immutable and can be shared by many threads.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class TriplePlan {
+  /**
+   * The dictionary used to expand cells.
+   */
+  private final TermDictionary dictionary;
+
+  /**
+   * The expanded IRI of "tutorial:row-", which row numbers are added to.
+   */
+  private final String rowPrefix;
+
+  /**
+   * The Node for "rdf:type".
+   */
+  private final Node typeNode;
+
+  /**
+   * The Node for "tutorial:row".
+   */
+  private final Node rowClassNode;
+
+  /**
+   * The predicate Node "tutorial:column-HEADER" for each column.
+   */
+  private final Node[] columnNodes;
+
+  /**
+   * Whether each column holds literals rather than URIs.
+   */
+  private final boolean[] literalColumns;
+
+  /**
+   * Given the header row of the table and a dictionary to expand terms,
+   * resolve the predicate for each column and the constant Nodes.
+   * The "datetime" and "comment" columns hold literals,
+   * all other columns hold URIs.
+   *
+   * @param headers the header row of the table
+   * @param dictionary the dictionary to expand terms with
+   */
+  public TriplePlan(List<String> headers, TermDictionary dictionary) {
+    this.dictionary = dictionary;
+    rowPrefix = dictionary.getIRI(dictionary.encode("tutorial:row-"));
+    typeNode = dictionary.getNode("rdf:type");
+    rowClassNode = dictionary.getNode("tutorial:row");
+    columnNodes = new Node[headers.size()];
+    literalColumns = new boolean[headers.size()];
+    for(int column = 0; column < headers.size(); column++) {
+      String header = headers.get(column);
+      columnNodes[column] = dictionary.getNode("tutorial:column-" + header);
+      literalColumns[column] = header.equals("datetime") ||
+                               header.equals("comment");
+    }
+  }
+
+  /**
+   * Convert one row of the table to triples and send them to a stream.
+   * The row becomes the subject "tutorial:row-N" of type "tutorial:row",
+   * each column becomes a predicate "tutorial:column-HEADER",
+   * and each non-empty cell becomes an object:
+   * a literal for the "datetime" and "comment" columns,
+   * otherwise a URI.
+   *
+   * @param rowNumber the number of the row, starting at 1
+   * @param row the cells of the row
+   * @param stream the stream to send triples to
+   */
+  public void convert(int rowNumber, List<String> row, StreamRDF stream) {
+    Node rowNode = NodeFactory.createURI(rowPrefix + rowNumber);
+    stream.triple(Triple.create(rowNode, typeNode, rowClassNode));
+
+    // convert row-column-cell to subject-predicate-object
+    int column = 0;
+    for(String cell: row) {
+      if(cell.length() == 0) {
+        // do nothing
+      } else if(literalColumns[column]) {
+        stream.triple(Triple.create(rowNode, columnNodes[column],
+              NodeFactory.createLiteral(cell)));
+      } else {
+        stream.triple(Triple.create(rowNode, columnNodes[column],
+              dictionary.getNode(cell)));
+      }
+      column = column + 1;
+    }
+  }
+
+}
@@ -0,0 +1,203 @@
+package obo_tutorial;
+
+import java.util.Iterator;
+import java.util.Map;
+import java.util.HashSet;
+import java.util.Set;
+
+import org.apache.jena.riot.system.StreamRDF;
+import org.apache.jena.riot.system.StreamRDFBase;
+import com.hp.hpl.jena.graph.Graph;
+import com.hp.hpl.jena.graph.Node;
+import com.hp.hpl.jena.graph.Triple;
+import com.hp.hpl.jena.sparql.core.Quad;
+import com.hp.hpl.jena.update.GraphStore;
+
+/**
+ * A stream of raw triples that collects them into batches of rows,
+ * runs an update pipeline on each batch,
+ * and sends the resulting data triples to an output stream
+ * before the next batch is collected.
+ * Peak memory depends on the batch size, not on the size of the input.
+ *
+ * A row is a run of triples with the same subject,
+ * as written by the convert command,
+ * so all the triples of a row must be next to each other in the input.
+ * The updates only see the rows of one batch at a time,
+ * so they must not join rows with each other.
+ * Triples derived by more than one batch,
+ * such as a fixed ontology header, are written once per batch;
+ * loading the output as a graph removes the duplicates.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class UpdateBatcher extends StreamRDFBase {
+  /**
+   * The graph store the updates run on.
+   */
+  private final GraphStore gs;
+
+  /**
+   * The graph that each batch of rows is collected in.
+   */
+  private final Graph raw;
+
+  /**
+   * The name of the graph that the updates write to.
+   */
+  private final Node dataNode;
+
+  /**
+   * The updates to run on each batch.
+   */
+  private final UpdatePipeline pipeline;
+
+  /**
+   * The number of rows in each batch.
+   */
+  private final int batchSize;
+
+  /**
+   * The stream that data triples are sent to.
+   */
+  private final StreamRDF output;
+
+  /**
+   * Prefixes to declare to the output
+   * if the input has not already declared them.
+   */
+  private final Map<String,String> defaultPrefixes;
+
+  /**
+   * The prefixes declared to the output so far.
+   */
+  private final Set<String> declared = new HashSet<String>();
+
+  /**
+   * The subject of the current row.
+   */
+  private Node subject = null;
+
+  /**
+   * The number of rows in the current batch.
+   */
+  private int rows = 0;
+
+  /**
+   * The number of batches run.
+   */
+  private int batches = 0;
+
+  /**
+   * Create a batcher.
+   * The raw graph must be the graph the updates read rows from,
+   * already added to the graph store.
+   * The output stream must already be started,
+   * and is not finished by this stream.
+   *
+   * @param gs the graph store to run the updates on
+   * @param raw the graph in the store to collect rows in
+   * @param dataNode the name of the graph the updates write to
+   * @param pipeline the updates to run on each batch
+   * @param batchSize the number of rows in each batch
+   * @param output the stream to send data triples to
+   * @param defaultPrefixes prefixes to declare to the output
+   *   if the input does not declare them
+   */
+  public UpdateBatcher(GraphStore gs, Graph raw, Node dataNode,
+      UpdatePipeline pipeline, int batchSize, StreamRDF output,
+      Map<String,String> defaultPrefixes) {
+    this.gs = gs;
+    this.raw = raw;
+    this.dataNode = dataNode;
+    this.pipeline = pipeline;
+    this.batchSize = batchSize;
+    this.output = output;
+    this.defaultPrefixes = defaultPrefixes;
+  }
+
+  /**
+   * Pass a prefix declared by the input on to the output.
+   *
+   * @param prefix the prefix
+   * @param iri the IRI string
+   */
+  public void prefix(String prefix, String iri) {
+    declared.add(prefix);
+    output.prefix(prefix, iri);
+  }
+
+  /**
+   * Add a triple to the current batch,
+   * first running the batch if this triple starts a row
+   * and the batch is full.
+   *
+   * @param triple the raw triple
+   */
+  public void triple(Triple triple) {
+    if(!triple.getSubject().equals(subject)) {
+      if(rows >= batchSize) {
+        flush();
+      }
+      subject = triple.getSubject();
+      rows = rows + 1;
+    }
+    raw.add(triple);
+  }
+
+  /**
+   * Add a quad in the default graph to the current batch;
+   * quads in named graphs are ignored.
+   *
+   * @param quad the raw quad
+   */
+  public void quad(Quad quad) {
+    if(quad.isTriple() || quad.isDefaultGraph()) {
+      triple(quad.asTriple());
+    }
+  }
+
+  /**
+   * Run the last batch.
+   */
+  public void finish() {
+    if(rows > 0) {
+      flush();
+    }
+  }
+
+  /**
+   * Run the updates on the current batch,
+   * send the data triples to the output,
+   * and clear the raw and data graphs for the next batch.
+   */
+  public void flush() {
+    if(batches == 0) {
+      for(Map.Entry<String,String> entry: defaultPrefixes.entrySet()) {
+        if(!declared.contains(entry.getKey())) {
+          output.prefix(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+
+    pipeline.execute(gs);
+    Graph data = gs.getGraph(dataNode);
+    Iterator<Triple> triples = data.find(Node.ANY, Node.ANY, Node.ANY);
+    while(triples.hasNext()) {
+      output.triple(triples.next());
+    }
+    data.clear();
+    raw.clear();
+
+    rows = 0;
+    batches = batches + 1;
+  }
+
+  /**
+   * @return the number of batches run so far
+   */
+  public int getBatches() {
+    return batches;
+  }
+
+}
@@ -0,0 +1,239 @@
+package obo_tutorial;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.ArrayList;
+import java.util.Map;
+import java.util.HashMap;
+
+import com.hp.hpl.jena.query.QueryParseException;
+import com.hp.hpl.jena.update.GraphStore;
+import com.hp.hpl.jena.update.UpdateExecutionFactory;
+import com.hp.hpl.jena.update.UpdateFactory;
+import com.hp.hpl.jena.update.UpdateProcessor;
+import com.hp.hpl.jena.update.UpdateRequest;
+
+/**
+ * An ordered list of SPARQL Update requests,
+ * parsed once and run in order against a graph store,
+ * reporting the time taken and the triples changed by each step.
+ * A pipeline can be executed many times, for example once per batch,
+ * and the report gives the totals for each step over all executions.
+ *
+ * @author <a href="mailto:james@overton.ca">James A. Overton</a>
+ */
+public class UpdatePipeline {
+  /**
+   * The file extension of SPARQL Update files in a pipeline directory.
+   */
+  public static final String EXTENSION = ".rq";
+
+  /**
+   * The name of each step.
+   */
+  private final List<String> names = new ArrayList<String>();
+
+  /**
+   * The parsed request for each step.
+   */
+  private final List<UpdateRequest> requests = new ArrayList<UpdateRequest>();
+
+  /**
+   * For each step, the total nanoseconds, inserts, and deletes
+   * over all executions.
+   */
+  private final List<long[]> totals = new ArrayList<long[]>();
+
+  /**
+   * Add a step to the end of the pipeline.
+   *
+   * @param name the name of the step, used in reports
+   * @param request the parsed SPARQL Update request
+   */
+  public void add(String name, UpdateRequest request) {
+    names.add(name);
+    requests.add(request);
+    totals.add(new long[3]);
+  }
+
+  /**
+   * Given the path of a SPARQL Update file,
+   * or of a directory of SPARQL Update files ending in ".rq",
+   * parse each file and return a pipeline with one step per file.
+   * The files of a directory are run in order of their names,
+   * so prefix them with numbers: 01-types.rq, 02-labels.rq, ...
+   *
+   * @param path the path of a SPARQL file or a directory of them
+   * @return the pipeline
+   * @throws IOException if a file cannot be read or parsed,
+   *   or a directory has no SPARQL files
+   */
+  public static UpdatePipeline load(String path) throws IOException {
+    UpdatePipeline pipeline = new UpdatePipeline();
+    for(File file: getFiles(path)) {
+      pipeline.add(file.getName(), read(file));
+    }
+    return pipeline;
+  }
+
+  /**
+   * Given the path of a SPARQL Update file,
+   * or of a directory of SPARQL Update files ending in ".rq",
+   * return the files that load() would read, in order.
+   *
+   * @param path the path of a SPARQL file or a directory of them
+   * @return the list of files
+   * @throws IOException if a directory cannot be listed,
+   *   or has no SPARQL files
+   */
+  public static List<File> getFiles(String path) throws IOException {
+    List<File> result = new ArrayList<File>();
+    File file = new File(path);
+    if(!file.isDirectory()) {
+      result.add(file);
+      return result;
+    }
+
+    File[] files = file.listFiles();
+    if(files == null) {
+      throw new IOException("Could not list directory " + path);
+    }
+    Arrays.sort(files);
+    for(File f: files) {
+      if(f.isFile() && f.getName().endsWith(EXTENSION)) {
+        result.add(f);
+      }
+    }
+    if(result.size() == 0) {
+      throw new IOException("No " + EXTENSION + " files in " + path);
+    }
+    return result;
+  }
+
+  /**
+   * Given a SPARQL Update file, parse it.
+   *
+   * @param file the file to read
+   * @return the parsed request
+   * @throws IOException if the file cannot be read or parsed
+   */
+  private static UpdateRequest read(File file) throws IOException {
+    InputStream input = new FileInputStream(file);
+    try {
+      return UpdateFactory.read(input);
+    } catch (QueryParseException e) {
+      throw new IOException("Could not parse SPARQL file " + file, e);
+    } finally {
+      input.close();
+    }
+  }
+
+  /**
+   * Return a new pipeline with the same steps and no totals,
+   * sharing the parsed requests with this one,
+   * so that a pipeline loaded once can be run by several threads,
+   * each with its own report.
+   *
+   * @return the new pipeline
+   */
+  public UpdatePipeline copy() {
+    UpdatePipeline pipeline = new UpdatePipeline();
+    for(int i = 0; i < requests.size(); i++) {
+      pipeline.add(names.get(i), requests.get(i));
+    }
+    return pipeline;
+  }
+
+  /**
+   * @return the number of steps
+   */
+  public int size() {
+    return requests.size();
+  }
+
+  /**
+   * @return the names of the steps, in order
+   */
+  public List<String> getNames() {
+    return names;
+  }
+
+  /**
+   * Return the prefixes declared by all the steps.
+   * When steps declare the same prefix differently, the first one wins.
+   *
+   * @return a map from prefix to IRI string
+   */
+  public Map<String,String> getPrefixMap() {
+    Map<String,String> prefixMap = new HashMap<String,String>();
+    for(UpdateRequest request: requests) {
+      for(Map.Entry<String,String> entry:
+          request.getPrefixMapping().getNsPrefixMap().entrySet()) {
+        if(!prefixMap.containsKey(entry.getKey())) {
+          prefixMap.put(entry.getKey(), entry.getValue());
+        }
+      }
+    }
+    return prefixMap;
+  }
+
+  /**
+   * Given a graph store, run each step in order,
+   * then print the wall time and the number of triples
+   * inserted and deleted by each step.
+   *
+   * @param gs the graph store to update
+   */
+  public void run(GraphStore gs) {
+    execute(gs);
+    report();
+  }
+
+  /**
+   * Given a graph store, run each step in order,
+   * adding the wall time and the number of triples
+   * inserted and deleted by each step (see CountingGraphStore)
+   * to the totals for the report.
+   *
+   * @param gs the graph store to update
+   */
+  public void execute(GraphStore gs) {
+    CountingGraphStore counter = new CountingGraphStore(gs);
+    for(int i = 0; i < requests.size(); i++) {
+      counter.reset();
+      long start = System.nanoTime();
+      UpdateProcessor up =
+        UpdateExecutionFactory.create(requests.get(i), counter);
+      up.execute();
+      long[] total = totals.get(i);
+      total[0] = total[0] + System.nanoTime() - start;
+      total[1] = total[1] + counter.getInserted();
+      total[2] = total[2] + counter.getDeleted();
+    }
+  }
+
+  /**
+   * Print the total wall time and the total number of triples
+   * inserted and deleted by each step over all executions,
+   * and the total time of all steps.
+   */
+  public void report() {
+    String fmt = "%-32s %8d ms %10d inserted %10d deleted";
+    long time = 0;
+    for(int i = 0; i < totals.size(); i++) {
+      long[] total = totals.get(i);
+      time = time + total[0];
+      System.out.println(String.format(fmt, names.get(i),
+            total[0] / 1000000, total[1], total[2]));
+    }
+    if(totals.size() > 1) {
+      System.out.println(String.format("%-32s %8d ms", "total",
+            time / 1000000));
+    }
+  }
+
+}